@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+
+/**
+ * Compares a JMH JSON result file with a stored baseline and exits with 1 if any benchmark regressed more than the tolerance.
+ * If there is no baseline yet, the result is stored as the baseline. Baselines are only meaningful on the machine they were recorded on.
+ * <br>
+ * Usage: BaselineComparator &lt;result.json&gt; &lt;baseline.json&gt; [tolerance percentage, default 10]
+ *
+ * @author Carlos Gonçalves
+ */
+public final class BaselineComparator {
+
+    private BaselineComparator() {
+    }
+
+    private record Score(double value, String unit, boolean higherIsBetter) {
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparator <result.json> <baseline.json> [tolerance percentage]");
+            System.exit(2);
+        }
+
+        Path resultFile = Paths.get(args[0]);
+        Path baselineFile = Paths.get(args[1]);
+        double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        if (!Files.exists(baselineFile)) {
+            Files.createDirectories(baselineFile.toAbsolutePath().getParent());
+            Files.copy(resultFile, baselineFile);
+            System.out.println("No baseline found, stored " + resultFile + " as the new baseline");
+            return;
+        }
+
+        Map<String, Score> results = readScores(resultFile);
+        Map<String, Score> baseline = readScores(baselineFile);
+
+        int regressions = 0;
+
+        for (var result : results.entrySet()) {
+
+            Score before = baseline.get(result.getKey());
+            if (before == null) {
+                System.out.printf("NEW        %s: %.3f %s%n", result.getKey(), result.getValue().value(), result.getValue().unit());
+                continue;
+            }
+
+            Score after = result.getValue();
+
+            // Positive means worse, whatever the mode
+            double change = (after.value() - before.value()) / before.value() * 100;
+            if (after.higherIsBetter()) {
+                change = -change;
+            }
+
+            boolean regressed = change > tolerance;
+            if (regressed) {
+                regressions++;
+            }
+
+            System.out.printf("%-10s %s: %.3f -> %.3f %s (%+.1f%% worse)%n", regressed ? "REGRESSED" : "OK", result.getKey(), before.value(), after.value(), after.unit(), change);
+        }
+
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed more than " + tolerance + "%");
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> readScores(Path file) throws IOException {
+
+        Map<String, Score> scores = new LinkedHashMap<>();
+
+        try (Reader fileReader = Files.newBufferedReader(file); JsonReader reader = Json.createReader(fileReader)) {
+
+            JsonArray runs = reader.readArray();
+
+            for (JsonObject run : runs.getValuesAs(JsonObject.class)) {
+
+                String name = run.getString("benchmark");
+                if (run.containsKey("params")) {
+                    name += run.getJsonObject("params").toString();
+                }
+
+                JsonObject metric = run.getJsonObject("primaryMetric");
+
+                scores.put(name, new Score(metric.getJsonNumber("score").doubleValue(), metric.getString("scoreUnit"), "thrpt".equals(run.getString("mode"))));
+            }
+        }
+
+        return scores;
+    }
+
+}
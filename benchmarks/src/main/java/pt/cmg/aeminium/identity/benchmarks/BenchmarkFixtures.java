@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.benchmarks;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import pt.cmg.aeminium.datamodel.common.entities.localisation.Language;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserDTO;
+import pt.cmg.aeminium.identity.tasks.jwt.SigningAlgorithm;
+
+/**
+ * Builds the objects the benchmarks need without a running container.
+ * Whatever the container would inject is set by reflection.
+ *
+ * @author Carlos Gonçalves
+ */
+final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    static User newUser(long id) {
+        User user = new User();
+        user.setName("Jason D. Frank");
+        user.setEmail("jdf@mail.com");
+        user.setLanguage(Language.DEFAULT_LANGUAGE);
+        user.setRoles(new ArrayList<>());
+        setField(user, "id", id);
+        return user;
+    }
+
+    static List<UserDTO> newUserDTOs(int count) {
+        List<UserDTO> users = new ArrayList<>(count);
+        for (long id = 0; id < count; id++) {
+            users.add(new UserDTO(id, "Jason D. Frank", "jdf" + id + "@mail.com", Language.DEFAULT_LANGUAGE, User.Status.ACTIVE, LocalDateTime.now(), List.of("GOD", "SCHOLAR")));
+        }
+        return users;
+    }
+
+    /**
+     * Generates a key pair for the algorithm and writes the private key as a PKCS#8 PEM file, like the ones JWTokenCreator reads.
+     */
+    record KeyFiles(Path privateKey, Path publicKey) {
+    }
+
+    /**
+     * A fresh key pair for the algorithm, written as PEM files (PKCS#8 and X.509), as the application expects them
+     */
+    static KeyFiles generateKeyFiles(SigningAlgorithm algorithm) throws IOException, GeneralSecurityException {
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm.getKeyType());
+        switch (algorithm) {
+            case RS256 -> generator.initialize(2048);
+            case ES256 -> generator.initialize(new ECGenParameterSpec("secp256r1"));
+            case EdDSA -> {
+                // Ed25519 has a single key size
+            }
+        }
+
+        KeyPair keyPair = generator.generateKeyPair();
+
+        return new KeyFiles(writePem("PRIVATE KEY", keyPair.getPrivate().getEncoded()), writePem("PUBLIC KEY", keyPair.getPublic().getEncoded()));
+    }
+
+    private static Path writePem(String type, byte[] encodedKey) throws IOException {
+
+        String pem = "-----BEGIN " + type + "-----\n" +
+            Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(encodedKey) +
+            "\n-----END " + type + "-----\n";
+
+        Path file = Files.createTempFile("identity-benchmark", ".pem");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, pem, StandardCharsets.US_ASCII);
+
+        return file;
+    }
+
+    static void setField(Object target, String fieldName, Object value) {
+        try {
+            findField(target, fieldName).set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T getField(Object target, String fieldName) {
+        try {
+            return (T) findField(target, fieldName).get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Field findField(Object target, String fieldName) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException e) {
+                // Keep looking in the superclass
+            }
+        }
+        throw new IllegalArgumentException("No field " + fieldName + " in " + target.getClass());
+    }
+
+}
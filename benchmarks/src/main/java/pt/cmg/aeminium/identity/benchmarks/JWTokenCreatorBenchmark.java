@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.benchmarks;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.tasks.jwt.JWTokenCreator;
+import pt.cmg.aeminium.identity.tasks.jwt.PublicKeys;
+import pt.cmg.aeminium.identity.tasks.jwt.SigningAlgorithm;
+import pt.cmg.aeminium.identity.tasks.jwt.UserClaims;
+
+/**
+ * Cost of minting a login token, for each signing algorithm, with JWTokenCreator and with the jjwt builder it replaced.
+ * Runs on a single thread, so the throughput is the number of tokens per second per core.
+ * <br>
+ * The setup fails the run if both do not produce the same bytes. ECDSA signatures are randomised,
+ * so for ES256 only the header and claims are compared.
+ *
+ * @author Carlos Gonçalves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class JWTokenCreatorBenchmark {
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    private SigningAlgorithm algorithm;
+
+    private PublicKeys publicKeys;
+    private JWTokenCreator tokenCreator;
+    private User user;
+    private UserClaims claims;
+
+    private PrivateKey privateKey;
+    private SignatureAlgorithm jjwtAlgorithm;
+
+    @Setup
+    public void setup() throws IOException, GeneralSecurityException {
+        BenchmarkFixtures.KeyFiles keyFiles = BenchmarkFixtures.generateKeyFiles(algorithm);
+
+        publicKeys = new PublicKeys();
+        BenchmarkFixtures.setField(publicKeys, "signingAlgorithm", algorithm);
+        BenchmarkFixtures.setField(publicKeys, "primaryKeyLocation", keyFiles.publicKey().toString());
+        BenchmarkFixtures.setField(publicKeys, "additionalKeyLocations", Optional.empty());
+        publicKeys.loadKeys();
+
+        tokenCreator = new JWTokenCreator();
+        BenchmarkFixtures.setField(tokenCreator, "publicKeys", publicKeys);
+        BenchmarkFixtures.setField(tokenCreator, "tokenValidityMinutes", 15L);
+        BenchmarkFixtures.setField(tokenCreator, "privateKeyLocation", keyFiles.privateKey().toString());
+        tokenCreator.loadPrivateKey();
+
+        privateKey = BenchmarkFixtures.getField(tokenCreator, "privateKey");
+        jjwtAlgorithm = switch (algorithm) {
+            case RS256 -> Jwts.SIG.RS256;
+            case ES256 -> Jwts.SIG.ES256;
+            case EdDSA -> Jwts.SIG.EdDSA;
+        };
+
+        user = BenchmarkFixtures.newUser(1L);
+        claims = UserClaims.of(user);
+
+        checkSameTokens();
+    }
+
+    private void checkSameTokens() {
+
+        Instant now = Instant.ofEpochSecond(1_700_000_000L);
+        String tokenId = JWTokenCreator.newTokenId();
+
+        String token = tokenCreator.generateNewToken(claims, now, tokenId);
+        String reference = generateJjwtToken(now, tokenId);
+
+        if (algorithm == SigningAlgorithm.ES256) {
+            token = token.substring(0, token.lastIndexOf('.'));
+            reference = reference.substring(0, reference.lastIndexOf('.'));
+        }
+
+        if (!token.equals(reference)) {
+            throw new IllegalStateException("Tokens differ:%n  JWTokenCreator: %s%n  jjwt:           %s".formatted(token, reference));
+        }
+    }
+
+    private String generateJjwtToken(Instant now, String tokenId) {
+        return Jwts.builder()
+            .header().type("JWT").keyId(publicKeys.getPrimaryKeyId()).and()
+            .claim("upn", user.getName())
+            .subject(user.getId().toString())
+            .issuer(JWTokenCreator.ISSUER)
+            .id(tokenId)
+            .issuedAt(Date.from(now))
+            .expiration(Date.from(now.plus(tokenCreator.getTokenValidity())))
+            .claim("groups", user.getRolesAsStrings())
+            .signWith(privateKey, jjwtAlgorithm)
+            .compact();
+    }
+
+    @Benchmark
+    public String generateNewToken() {
+        return tokenCreator.generateNewToken(claims);
+    }
+
+    @Benchmark
+    public String jjwtBuilder() {
+        return generateJjwtToken(Instant.now(), JWTokenCreator.newTokenId());
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.login.converters.LoginConverter;
+
+/**
+ * Basic Authentication parsing. The login used to do it twice, now it does it once.
+ *
+ * @author Carlos Gonçalves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoginConverterBenchmark {
+
+    private final String authorizationHeader = "Basic " + Base64.getEncoder().encodeToString("jdf@mail.com:aeminium-password".getBytes(StandardCharsets.UTF_8));
+
+    @Benchmark
+    public String[] parseOnce() {
+        return LoginConverter.extractBasicAuthenticationCredentials(authorizationHeader);
+    }
+
+    @Benchmark
+    public void parseTwice(Blackhole blackhole) {
+        blackhole.consume(LoginConverter.extractBasicAuthenticationCredentials(authorizationHeader));
+        blackhole.consume(LoginConverter.extractBasicAuthenticationCredentials(authorizationHeader)[0]);
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test against a running instance: measures the latency of a non-login endpoint (the JWKS) while idle
+ * and then during a login storm, so it shows whether logins can still starve the HTTP workers.
+ * <br>
+ * The storm uses the emails of existing users with a wrong password, so every login goes all the way to the password hash.
+ * With the login pool, the probe latency should stay close to the idle one and the excess logins should get 503s.
+ * <br>
+ * The brute force throttle answers 429 long before the login pool fills up (it allows a handful of attempts per email and per client
+ * address a minute), and every storm thread shares the address of this client. So the instance under test must run with the throttle
+ * opened up (see the README), and the storm is spread over as many emails as given. The 429s are reported apart from the 503s,
+ * and a storm mostly answered by the throttle is flagged, as it measured the throttle and not the login pool.
+ * <br>
+ * Usage: LoginStormLoadTest &lt;base url, e.g. http://localhost:8080&gt; &lt;existing user emails, comma separated&gt; [seconds per phase, default 20] [storm threads, default 64]
+ *
+ * @author Carlos Gonçalves
+ */
+public final class LoginStormLoadTest {
+
+    private static final String WRONG_PASSWORD = "not-the-password-123";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private LoginStormLoadTest() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        if (args.length < 2) {
+            System.err.println("Usage: LoginStormLoadTest <base url> <existing user emails, comma separated> [seconds per phase] [storm threads]");
+            System.exit(2);
+        }
+
+        String baseUrl = args[0];
+        String[] emails = args[1].split(",");
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int stormThreads = args.length > 3 ? Integer.parseInt(args[3]) : 64;
+
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+        HttpRequest probe = HttpRequest.newBuilder(URI.create(baseUrl + "/v1/.well-known/jwks.json")).GET().build();
+
+        List<HttpRequest> logins = Arrays.stream(emails).map(email -> login(baseUrl, email.trim())).toList();
+
+        System.out.printf("Idle, %d seconds%n", seconds);
+        report("probe", probe(client, probe, seconds));
+
+        System.out.printf("Login storm with %d threads over %d emails, %d seconds%n", stormThreads, logins.size(), seconds);
+
+        Map<Integer, LongAdder> loginStatuses = new ConcurrentHashMap<>();
+        ExecutorService storm = Executors.newFixedThreadPool(stormThreads);
+        long stormEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        for (int i = 0; i < stormThreads; i++) {
+            int thread = i;
+            storm.execute(() -> {
+                // Each thread goes through the emails from a different one, so they are all hit evenly
+                for (int attempt = thread; System.nanoTime() < stormEnd; attempt++) {
+                    loginStatuses.computeIfAbsent(send(client, logins.get(attempt % logins.size())), status -> new LongAdder()).increment();
+                }
+            });
+        }
+
+        report("probe", probe(client, probe, seconds));
+
+        storm.shutdown();
+        storm.awaitTermination(30, TimeUnit.SECONDS);
+
+        reportLogins(loginStatuses);
+    }
+
+    private static HttpRequest login(String baseUrl, String email) {
+
+        String credentials = Base64.getEncoder().encodeToString((email + ":" + WRONG_PASSWORD).getBytes(StandardCharsets.UTF_8));
+
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/v1/login"))
+            .header("Authorization", "Basic " + credentials)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.noBody())
+            .build();
+    }
+
+    /**
+     * Sends the probe request back to back for the duration, returning the latencies in nanoseconds
+     */
+    private static long[] probe(HttpClient client, HttpRequest probe, int seconds) {
+
+        List<Long> latencies = new ArrayList<>();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        while (System.nanoTime() < end) {
+            long start = System.nanoTime();
+            send(client, probe);
+            latencies.add(System.nanoTime() - start);
+        }
+
+        return latencies.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // -1 stands for a request that did not get an answer (timeouts, refused connections)
+    private static int send(HttpClient client, HttpRequest request) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static void report(String name, long[] latencies) {
+
+        if (latencies.length == 0) {
+            System.out.printf("  %s: no requests completed%n", name);
+            return;
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("  %s: %d requests, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+            name,
+            latencies.length,
+            percentile(latencies, 50) / 1e6,
+            percentile(latencies, 99) / 1e6,
+            latencies[latencies.length - 1] / 1e6);
+    }
+
+    /**
+     * The logins shed by the login pool (503) and the ones turned away by the throttle (429) apart, then every status
+     */
+    private static void reportLogins(Map<Integer, LongAdder> loginStatuses) {
+
+        long total = loginStatuses.values().stream().mapToLong(LongAdder::sum).sum();
+        long shed = count(loginStatuses, SERVICE_UNAVAILABLE);
+        long throttled = count(loginStatuses, TOO_MANY_REQUESTS);
+
+        System.out.printf("  logins: %d, shed by the login pool (503): %d, throttled (429): %d%n", total, shed, throttled);
+        new TreeMap<>(loginStatuses).forEach((status, count) -> System.out.printf("  login HTTP %d: %d%n", status, count.sum()));
+
+        if (throttled * 2 > total) {
+            System.out.println("  WARNING: most logins were throttled, so this measured the throttle and not the login pool."
+                + " Open the throttle up on the instance under test, or give more emails");
+        }
+    }
+
+    private static long count(Map<Integer, LongAdder> loginStatuses, int status) {
+        LongAdder count = loginStatuses.get(status);
+        return count == null ? 0 : count.sum();
+    }
+
+    private static long percentile(long[] sortedLatencies, int percentile) {
+        return sortedLatencies[Math.min(sortedLatencies.length - 1, sortedLatencies.length * percentile / 100)];
+    }
+
+}
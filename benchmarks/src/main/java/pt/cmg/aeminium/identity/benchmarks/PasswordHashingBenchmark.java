@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.cmg.jakartautils.identity.PasswordUtils;
+
+/**
+ * The salted hash comparison done by LoginValidator.isCorrectPassword on every login.
+ *
+ * @author Carlos Gonçalves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordHashingBenchmark {
+
+    private String salt;
+    private String storedPassword;
+
+    @Setup
+    public void setup() {
+        salt = PasswordUtils.generateSalt();
+        storedPassword = PasswordUtils.generateSaltedPassword(salt, "aeminium-password");
+    }
+
+    @Benchmark
+    public boolean isCorrectPassword() {
+        return PasswordUtils.generateSaltedPassword(salt, "aeminium-password").equals(storedPassword);
+    }
+
+}
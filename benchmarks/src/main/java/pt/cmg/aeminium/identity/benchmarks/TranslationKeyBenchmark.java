@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.cmg.aeminium.datamodel.common.entities.localisation.Language;
+import pt.cmg.aeminium.identity.cache.TranslationKey;
+
+/**
+ * Building (and hashing, as Hazelcast does) a translations map key.
+ * The String key is what TextTranslationCache used before the packed long keys.
+ *
+ * @author Carlos Gonçalves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslationKeyBenchmark {
+
+    private Long textId = 123_456L;
+    private Language language = Language.DEFAULT_LANGUAGE;
+
+    @Benchmark
+    public int formattedStringKey() {
+        return "%s_%s".formatted(textId, language).hashCode();
+    }
+
+    @Benchmark
+    public int packedLongKey() {
+        return Long.hashCode(TranslationKey.of(textId, language));
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbBuilder;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserDTO;
+import pt.cmg.aeminium.identity.configuration.jsonb.JsonbProvider;
+
+/**
+ * Serialising a page of users, with the shared Jsonb from JsonbProvider and with a Jsonb built per call (how getContext used to work).
+ * Run with "-prof gc" to see the allocation rate and with "-bm sample" for the latency percentiles.
+ *
+ * @author Carlos Gonçalves
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDTOSerialisationBenchmark {
+
+    @Param({"30", "300"})
+    private int pageSize;
+
+    private List<UserDTO> users;
+
+    @Setup
+    public void setup() {
+        users = BenchmarkFixtures.newUserDTOs(pageSize);
+    }
+
+    @Benchmark
+    public String sharedJsonb() {
+        return new JsonbProvider().getContext(UserDTO.class).toJson(users);
+    }
+
+    @Benchmark
+    public String jsonbPerCall() throws Exception {
+        // Same configuration as the provider, the cost being measured is building it every time
+        try (Jsonb jsonb = JsonbBuilder.newBuilder().withConfig(JsonbProvider.createConfiguration()).build()) {
+            return jsonb.toJson(users);
+        }
+    }
+
+}
@@ -6,7 +6,6 @@ package pt.cmg.aeminium.identity.api.rest.v1;
 
 import java.util.HashSet;
 import java.util.Set;
-import org.eclipse.microprofile.auth.LoginConfig;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.ws.rs.ApplicationPath;
 import jakarta.ws.rs.core.Application;
@@ -14,17 +13,24 @@ import pt.cmg.aeminium.datamodel.common.entities.localisation.Language;
 import pt.cmg.aeminium.identity.api.rest.v1.filters.request.ApplicationDataRequestFilter;
 import pt.cmg.aeminium.identity.api.rest.v1.filters.request.LanguageSetterRequestFilter;
 import pt.cmg.aeminium.identity.api.rest.v1.filters.request.UserLoaderRequestFilter;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.jwks.JwksResource;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.login.LoginResource;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.ping.PingResource;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.UserImportResource;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.UserResource;
 import pt.cmg.aeminium.identity.configuration.jsonb.JsonbProvider;
+import pt.cmg.aeminium.identity.configuration.security.RolesAllowedFeature;
 import pt.cmg.jakartautils.errors.ConstraintViolationExceptionMapper;
 
 /**
+ * Bearer tokens are authenticated by {@link pt.cmg.aeminium.identity.configuration.security.JWTAuthenticationMechanism},
+ * not by the MicroProfile JWT runtime, so there is no @LoginConfig here. Adding it back would register a second mechanism.
+ * What that runtime did besides verifying tokens is done here instead: {@link RolesAllowedFeature} enforces @RolesAllowed,
+ * and WEB-INF/payara-web.xml maps the token groups to the roles.
+ *
  * @author Carlos Gonçalves
  */
 @ApplicationScoped
-@LoginConfig(authMethod = "MP-JWT")
 @ApplicationPath("/v1")
 public class IdentityApplication extends Application {
 
@@ -32,6 +38,8 @@ public class IdentityApplication extends Application {
     public static final String REQUEST_HEADER_APP_NAME = "aem-app";
     public static final String REQUEST_HEADER_APP_VERSION = "aem-app-version";
 
+    public static final String RESPONSE_HEADER_NEXT_CURSOR = "aem-next-cursor";
+
     public static final Language APP_DEFAULT_LANGUAGE = Language.DEFAULT_LANGUAGE;
 
     @Override
@@ -39,12 +47,15 @@ public class IdentityApplication extends Application {
         Set<Class<?>> resources = new HashSet<>();
 
         resources.add(UserResource.class);
+        resources.add(UserImportResource.class);
         resources.add(LoginResource.class);
         resources.add(PingResource.class);
+        resources.add(JwksResource.class);
 
         resources.add(LanguageSetterRequestFilter.class);
         resources.add(ApplicationDataRequestFilter.class);
         resources.add(UserLoaderRequestFilter.class);
+        resources.add(RolesAllowedFeature.class);
 
         resources.add(JsonbProvider.class);
         resources.add(ConstraintViolationExceptionMapper.class);
@@ -12,7 +12,7 @@ import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerRequestFilter;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
-import pt.cmg.aeminium.datamodel.users.dao.identity.UserDAO;
+import pt.cmg.aeminium.identity.cache.UserStatusCache;
 
 /**
  * @author Carlos Gonçalves
@@ -24,24 +24,24 @@ public class UserLoaderRequestFilter implements ContainerRequestFilter {
     private Event<Long> userEventHandler;
 
     @Inject
-    private JsonWebToken jwtToken;
-
-    @Inject
-    private UserDAO userDAO;
+    private UserStatusCache userStatusCache;
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
 
-        if (jwtToken.getRawToken() == null) {
+        // The caller principal is the token verified by JWTAuthenticationMechanism, if any
+        if (!(requestContext.getSecurityContext().getUserPrincipal() instanceof JsonWebToken jwtToken)) {
             return;
         }
 
         Long sub = Long.valueOf(jwtToken.getSubject());
 
         // I will check the cache anyway. There really isn't much point as the JWT was generated by me and if it reaches this point
-        // I know it is valid... but I don't trust computers.
-        if (userDAO.findById(sub) == null) {
+        // I know it is valid... but I don't trust computers. The cache answers from memory most of the time.
+        // The token outlives any change to the user, so a user that was disabled since is turned away here as well.
+        if (!userStatusCache.canAuthenticate(sub)) {
             requestContext.abortWith(Response.status(Status.FORBIDDEN).build());
+            return;
         }
 
         userEventHandler.fire(sub);
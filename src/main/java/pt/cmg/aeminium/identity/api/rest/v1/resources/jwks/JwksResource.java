@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.api.rest.v1.resources.jwks;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+import pt.cmg.aeminium.identity.tasks.jwt.PublicKeys;
+
+/**
+ * Publishes the token verification keys as a JWK Set, so other services can verify tokens on their own
+ * (point their "mp.jwt.verify.publickey.location" here).
+ * <br>
+ * The document only changes on a redeploy with different keys, so it is served from memory with a strong ETag:
+ * verifiers can cache it and poll with If-None-Match, which is answered with a 304 and no body.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+@Path(".well-known/jwks.json")
+@Tag(name = "Keys", description = "Token verification keys")
+public class JwksResource {
+
+    @Inject
+    @ConfigProperty(name = "jwt.jwks.maxAgeSeconds", defaultValue = "3600")
+    private int maxAgeSeconds;
+
+    @Inject
+    private PublicKeys publicKeys;
+
+    private EntityTag entityTag;
+
+    private CacheControl cacheControl;
+
+    @PostConstruct
+    public void initialise() {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(publicKeys.getJwks());
+            entityTag = new EntityTag(Base64.getUrlEncoder().withoutPadding().encodeToString(digest));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM must support SHA-256
+            throw new IllegalStateException(e);
+        }
+
+        cacheControl = new CacheControl();
+        cacheControl.setMaxAge(maxAgeSeconds);
+        cacheControl.setNoTransform(false);
+    }
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(
+        summary = "Token verification keys",
+        description = "The public keys tokens are signed with, as a JWK Set. Supports conditional requests with If-None-Match.",
+        operationId = "GET_jwks")
+    @APIResponse(
+        responseCode = "200",
+        description = "The JWK Set")
+    @APIResponse(
+        responseCode = "304",
+        description = "The JWK Set did not change since the ETag in If-None-Match")
+    public Response getKeys(@Context Request request) {
+
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(entityTag);
+        if (notModified != null) {
+            return notModified.cacheControl(cacheControl).build();
+        }
+
+        return Response.ok(publicKeys.getJwks()).tag(entityTag).cacheControl(cacheControl).build();
+    }
+
+}
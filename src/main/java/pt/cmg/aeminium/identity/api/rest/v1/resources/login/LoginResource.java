@@ -4,7 +4,13 @@
  */
 package pt.cmg.aeminium.identity.api.rest.v1.resources.login;
 
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Logger;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
@@ -13,7 +19,11 @@ import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
@@ -21,11 +31,20 @@ import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
-import pt.cmg.aeminium.datamodel.users.dao.identity.UserDAO;
+import jakarta.ws.rs.core.SecurityContext;
 import pt.cmg.aeminium.datamodel.users.entities.identity.User;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.login.converters.LoginConverter;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.login.dto.request.RefreshTokenDTO;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.login.validators.LoginValidator;
+import pt.cmg.aeminium.identity.cache.RefreshTokens;
+import pt.cmg.aeminium.identity.cache.RevokedTokens;
+import pt.cmg.aeminium.identity.cache.UserClaimsCache;
+import pt.cmg.aeminium.identity.cache.UserStatusCache;
 import pt.cmg.aeminium.identity.tasks.jwt.JWTokenCreator;
+import pt.cmg.aeminium.identity.tasks.jwt.UserClaims;
+import pt.cmg.aeminium.identity.tasks.jwt.VerifiedToken;
+import pt.cmg.aeminium.identity.tasks.login.LoginExecutor;
+import pt.cmg.aeminium.identity.tasks.login.LoginThrottle;
 import pt.cmg.jakartautils.errors.ErrorDTO;
 import pt.cmg.jakartautils.text.TextFormatter;
 
@@ -39,15 +58,32 @@ public class LoginResource {
 
     private static final Logger LOGGER = Logger.getLogger(LoginResource.class.getName());
 
-    @Inject
-    private UserDAO userDAO;
+    private static final int LOGIN_RETRY_AFTER_SECONDS = 1;
 
     @Inject
     private LoginValidator loginValidator;
 
+    @Inject
+    private LoginExecutor loginExecutor;
+
+    @Inject
+    private LoginThrottle loginThrottle;
+
     @Inject
     private JWTokenCreator jwtokenCreator;
 
+    @Inject
+    private RevokedTokens revokedTokens;
+
+    @Inject
+    private RefreshTokens refreshTokens;
+
+    @Inject
+    private UserStatusCache userStatusCache;
+
+    @Inject
+    private UserClaimsCache userClaimsCache;
+
     @POST
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_JSON)
@@ -57,24 +93,114 @@ public class LoginResource {
         operationId = "login")
     @APIResponse(
         responseCode = "200",
-        description = "Valid login credentials. Returns JWT.",
+        description = "Valid login credentials. Returns a short lived JWT (token), its validity in seconds (expiresIn) and a refresh token (refreshToken).",
         content = @Content(mediaType = "application/json", schema = @Schema(implementation = Map.class)))
     @APIResponse(
         responseCode = "400",
         description = "Invalid login credentials. Returns Error",
         content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorDTO.class)))
-    public Response login(@Context HttpHeaders headers) {
+    @APIResponse(
+        responseCode = "429",
+        description = "Too many login attempts from this address or for this email, try again after Retry-After seconds")
+    @APIResponse(
+        responseCode = "503",
+        description = "Too many logins in progress, try again later")
+    public CompletionStage<Response> login(@Context HttpHeaders headers, @Context HttpServletRequest request) {
+
+        // Headers are bound to the request thread, so they are read here and the hashing happens on the login pool
+        String authorizationHeader = headers.getHeaderString(HttpHeaders.AUTHORIZATION);
+
+        String email = LoginConverter.findUserEmail(authorizationHeader);
+
+        // Throttled attempts are answered right here: no queueing, no database and no hashing
+        long retryAfter = loginThrottle.tryAcquire(request.getRemoteAddr(), email);
+        if (retryAfter > 0) {
+            return CompletableFuture.completedFuture(Response.status(Response.Status.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, retryAfter).build());
+        }
 
-        var validationErrors = loginValidator.isValidLogin(headers);
+        return loginExecutor.submit(() -> validateAndLogin(authorizationHeader, email)).exceptionally(error -> {
+            if (error instanceof RejectedExecutionException || error.getCause() instanceof RejectedExecutionException) {
+                return Response.status(Response.Status.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, LOGIN_RETRY_AFTER_SECONDS).build();
+            }
+            throw error instanceof CompletionException completionError ? completionError : new CompletionException(error);
+        });
+    }
+
+    private Response validateAndLogin(String authorizationHeader, String email) {
+
+        var validationErrors = loginValidator.isValidLogin(authorizationHeader);
         if (validationErrors.isPresent()) {
             return Response.status(Response.Status.BAD_REQUEST).entity(validationErrors.get()).build();
         }
 
-        User user = userDAO.findByEmail(LoginConverter.extractUserEmail(headers));
+        // The validator already decoded the credentials and loaded the user, no need to do it twice
+        User user = loginValidator.getValidatedUser();
+
+        loginThrottle.onLoginSucceeded(email);
 
         LOGGER.info(TextFormatter.formatMessageToLazyLog("User {0} logged in", user.getId()));
 
-        return Response.ok(Map.of("token", jwtokenCreator.generateNewToken(user))).build();
+        // Cached claims, so minting the token does not load the roles of the user
+        return Response.ok(newTokens(userClaimsCache.getClaims(user))).build();
+    }
+
+    @POST
+    @Path("refresh")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Operation(
+        summary = "Refreshes an aeminium login",
+        description = "Provide a refresh token and a new JWT will be returned, together with a new refresh token. Refresh tokens can only be used once.",
+        operationId = "refresh")
+    @APIResponse(
+        responseCode = "200",
+        description = "Valid refresh token. Returns JWT, its validity in seconds and a new refresh token.",
+        content = @Content(mediaType = "application/json", schema = @Schema(implementation = Map.class)))
+    @APIResponse(
+        responseCode = "401",
+        description = "The refresh token does not exist, has expired or was already used, or its user can no longer log in. Returns Error",
+        content = @Content(mediaType = "application/json", schema = @Schema(implementation = ErrorDTO.class)))
+    public Response refresh(@NotNull @Valid RefreshTokenDTO refreshTokenDTO) {
+
+        // No password to hash and no database: the claims travel with the refresh token and the user status is cached
+        Optional<UserClaims> user = refreshTokens.redeem(refreshTokenDTO.refreshToken);
+        // A disabled user must not be able to keep its session alive by refreshing
+        if (user.isEmpty() || !userStatusCache.canAuthenticate(user.get().userId())) {
+            return Response.status(Response.Status.UNAUTHORIZED).entity(List.of(new ErrorDTO(7, "Invalid refresh token"))).build();
+        }
+
+        return Response.ok(newTokens(user.get())).build();
+    }
+
+    @DELETE
+    @Operation(
+        summary = "Performs aeminium logout",
+        description = "Revokes the JWT used in this request, in every node of the cluster",
+        operationId = "logout")
+    @APIResponse(
+        responseCode = "204",
+        description = "The token was revoked")
+    @APIResponse(
+        responseCode = "401",
+        description = "There is no valid token in the request")
+    public Response logout(@Context SecurityContext securityContext) {
+
+        if (!(securityContext.getUserPrincipal() instanceof VerifiedToken token)) {
+            return Response.status(Response.Status.UNAUTHORIZED).build();
+        }
+
+        revokedTokens.revoke(token);
+
+        LOGGER.info(TextFormatter.formatMessageToLazyLog("User {0} logged out", token.getSubject()));
+
+        return Response.noContent().build();
+    }
+
+    private Map<String, Object> newTokens(UserClaims user) {
+        return Map.of(
+            "token", jwtokenCreator.generateNewToken(user),
+            "expiresIn", jwtokenCreator.getTokenValidity().toSeconds(),
+            "refreshToken", refreshTokens.issue(user));
     }
 
 }
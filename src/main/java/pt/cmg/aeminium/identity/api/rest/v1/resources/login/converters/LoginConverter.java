@@ -17,9 +17,16 @@ public class LoginConverter {
      * Extracts the Basic Authentication credentials from the headers.
      */
     public static String[] extractBasicAuthenticationCredentials(HttpHeaders headers) throws InvalidParameterException {
+        return extractBasicAuthenticationCredentials(headers.getRequestHeader(HttpHeaders.AUTHORIZATION).getFirst());
+    }
+
+    /**
+     * Extracts the Basic Authentication credentials from the value of the Authorization header.
+     */
+    public static String[] extractBasicAuthenticationCredentials(String authorizationHeader) throws InvalidParameterException {
 
         // Basic authentication credentials come encoded as a Base64 String AFTER the String "Basic " with space, that's why substring was used
-        String authHeader = headers.getRequestHeader(HttpHeaders.AUTHORIZATION).getFirst().substring("Basic ".length());
+        String authHeader = authorizationHeader.substring("Basic ".length());
 
         // ...and even then it comes separated by a ":"
         String[] decoded = new String(Base64.getDecoder().decode(authHeader)).split(":");
@@ -27,6 +34,22 @@ public class LoginConverter {
         return decoded;
     }
 
+    /**
+     * The email of the Basic Authentication credentials, or null if the header is missing or malformed. It never throws.
+     */
+    public static String findUserEmail(String authorizationHeader) {
+
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Basic ")) {
+            return null;
+        }
+
+        try {
+            return extractBasicAuthenticationCredentials(authorizationHeader)[0];
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public static String extractUserEmail(HttpHeaders headers) throws InvalidParameterException {
         return extractBasicAuthenticationCredentials(headers)[0];
     }
@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.api.rest.v1.resources.login.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+
+/**
+ * @author Carlos Gonçalves
+ */
+public class RefreshTokenDTO {
+
+    @NotBlank(message = "6-Refresh token cannot be null or empty")
+    public String refreshToken;
+}
@@ -10,21 +10,25 @@ import java.util.Optional;
 import java.util.logging.Logger;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.validator.routines.EmailValidator;
-import jakarta.enterprise.context.RequestScoped;
+import jakarta.enterprise.context.Dependent;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.core.HttpHeaders;
 import pt.cmg.aeminium.datamodel.users.dao.identity.UserDAO;
 import pt.cmg.aeminium.datamodel.users.entities.identity.User;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.login.converters.LoginConverter;
+import pt.cmg.aeminium.identity.tasks.users.EmailNormaliser;
 import pt.cmg.aeminium.identity.tasks.users.PasswordConstrainer;
 import pt.cmg.jakartautils.errors.ErrorDTO;
 import pt.cmg.jakartautils.identity.PasswordUtils;
 import pt.cmg.jakartautils.text.TextFormatter;
 
 /**
+ * Dependent and not request scoped: logins run on the LoginExecutor threads, where there is no request context.
+ * Each LoginResource gets its own instance anyway, so the validated user is still per request.
+ *
  * @author Carlos Gonçalves
  */
-@RequestScoped
+@Dependent
 public class LoginValidator {
 
     // The maximum email length is 254, by the specification RFC 5321 (see http://www.dominicsayers.com/isemail/).
@@ -36,16 +40,30 @@ public class LoginValidator {
     @Inject
     private UserDAO userDAO;
 
+    // Loaded once while validating, so the resource can reuse it instead of going back to the database
     private User currentUser;
 
+    /**
+     * Validates the Basic Authentication credentials of a login request.
+     * The credentials are decoded once and the user is loaded once; if the login is valid,
+     * that same user is available through {@link #getValidatedUser()}.
+     */
     public Optional<List<ErrorDTO>> isValidLogin(HttpHeaders headers) {
+        return isValidLogin(headers.getHeaderString(HttpHeaders.AUTHORIZATION));
+    }
+
+    /**
+     * Same as {@link #isValidLogin(HttpHeaders)}, from the value of the Authorization header,
+     * which can be read on the request thread and validated anywhere else.
+     */
+    public Optional<List<ErrorDTO>> isValidLogin(String authorizationHeader) {
 
-        var errors = isValidLoginHeader(headers);
+        var errors = isValidLoginHeader(authorizationHeader);
         if (errors.isPresent()) {
             return errors;
         }
 
-        String[] credentials = LoginConverter.extractBasicAuthenticationCredentials(headers);
+        String[] credentials = LoginConverter.extractBasicAuthenticationCredentials(authorizationHeader);
 
         errors = areValidCredentials(credentials);
         if (errors.isPresent()) {
@@ -65,11 +83,18 @@ public class LoginValidator {
         return Optional.empty();
     }
 
-    private Optional<List<ErrorDTO>> isValidLoginHeader(HttpHeaders headers) {
+    /**
+     * The user loaded during {@link #isValidLogin(String)}. Only meaningful after a successful validation.
+     */
+    public User getValidatedUser() {
+        return currentUser;
+    }
+
+    private Optional<List<ErrorDTO>> isValidLoginHeader(String authorizationHeader) {
 
         List<ErrorDTO> errors = new ArrayList<>();
 
-        if (headers.getRequestHeader(HttpHeaders.AUTHORIZATION) == null) {
+        if (authorizationHeader == null) {
             errors.add(new ErrorDTO(1, "Invalid parameters, authentication header is null"));
         }
 
@@ -102,7 +127,7 @@ public class LoginValidator {
 
     private Optional<List<ErrorDTO>> isUserStatusValid(String email) {
 
-        currentUser = userDAO.findByEmail(email);
+        currentUser = userDAO.findByEmail(EmailNormaliser.normalise(email));
         if (currentUser == null) {
             LOGGER.warning(TextFormatter.formatMessageToLazyLog("This user does not exist {0}", email));
             return Optional.of(List.of(new ErrorDTO(4, "This user does not exist")));
@@ -122,7 +147,7 @@ public class LoginValidator {
 
         if (!saltedPassword.equals(currentUser.getPassword())) {
             LOGGER.warning(TextFormatter.formatMessageToLazyLog("User {0} - Wrong password.", currentUser.getEmail()));
-            Optional.of(List.of(new ErrorDTO(3, "Invalid login credentials")));
+            return Optional.of(List.of(new ErrorDTO(3, "Invalid login credentials")));
         }
 
         return Optional.empty();
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.api.rest.v1.resources.users;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.RejectedExecutionException;
+import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.media.Content;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+import org.eclipse.microprofile.openapi.annotations.tags.Tag;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.enterprise.context.RequestScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.converters.UserImportConverter;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserImportStatusDTO;
+import pt.cmg.aeminium.identity.tasks.users.imports.UserImportStatus;
+import pt.cmg.aeminium.identity.tasks.users.imports.UserImporter;
+import pt.cmg.aeminium.identity.tasks.users.imports.UserImporter.UploadTooLargeException;
+import pt.cmg.jakartautils.errors.ErrorDTO;
+import pt.cmg.jakartautils.text.TextFormatter;
+
+/**
+ * Bulk user imports, run in the background. See {@link UserImporter}.
+ *
+ * @author Carlos Gonçalves
+ */
+@RequestScoped
+@Path("users/imports")
+@RolesAllowed({"GOD", "SCHOLAR"})
+@Tag(name = "Users", description = "Endpoints related operations with users")
+public class UserImportResource {
+
+    private static final String MEDIA_TYPE_CSV = "text/csv";
+    private static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
+    private static final int IMPORT_RETRY_AFTER_SECONDS = 60;
+
+    @Inject
+    private UserImporter userImporter;
+
+    @POST
+    @Consumes({MEDIA_TYPE_CSV, MEDIA_TYPE_NDJSON})
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(
+        summary = "Starts a bulk import of users",
+        description = "Uploads a CSV file (with a header naming the columns name, email, password, language and roles, the roles separated by |) "
+            + "or newline delimited JSON (one user per line, as in POST /users). The users are created in the background, the progress is at the returned Location",
+        operationId = "POST_users_imports")
+    @APIResponse(
+        responseCode = "202",
+        description = "The import was queued. Returns its status",
+        content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UserImportStatusDTO.class)))
+    @APIResponse(
+        responseCode = "413",
+        description = "The upload is larger than users.import.maxBytes",
+        content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ErrorDTO.class)))
+    @APIResponse(
+        responseCode = "503",
+        description = "There are too many imports waiting, try again after Retry-After seconds",
+        content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ErrorDTO.class)))
+    public Response importUsers(InputStream upload, @Context HttpHeaders headers, @Context UriInfo uriInfo) throws IOException {
+
+        UserImporter.Format format = headers.getMediaType().isCompatible(MediaType.valueOf(MEDIA_TYPE_CSV)) ? UserImporter.Format.CSV : UserImporter.Format.NDJSON;
+
+        UserImportStatus status;
+        try {
+            status = userImporter.submit(upload, headers.getLength(), format);
+        } catch (UploadTooLargeException e) {
+            return Response.status(Response.Status.REQUEST_ENTITY_TOO_LARGE).entity(new ErrorDTO(2, e.getMessage())).build();
+        } catch (RejectedExecutionException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, IMPORT_RETRY_AFTER_SECONDS)
+                .entity(new ErrorDTO(1, "Too many imports waiting"))
+                .build();
+        }
+
+        return Response.accepted(UserImportConverter.toUserImportStatusDTO(status))
+            .location(uriInfo.getAbsolutePathBuilder().path(status.jobId()).build())
+            .build();
+    }
+
+    @GET
+    @Path("{jobId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(
+        summary = "Retrieves the progress of a bulk import",
+        description = "Obtains the state, counters, throughput and row errors of an import. Any cluster member can answer",
+        operationId = "GET_users_import_by_id")
+    @APIResponse(
+        responseCode = "200",
+        description = "Import found. Returns its status",
+        content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UserImportStatusDTO.class)))
+    @APIResponse(
+        responseCode = "404",
+        description = "There is no such import, or it finished too long ago",
+        content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ErrorDTO.class)))
+    public Response getImport(@PathParam("jobId") String jobId) {
+        return userImporter.getStatus(jobId)
+            .map(status -> Response.ok(UserImportConverter.toUserImportStatusDTO(status)).build())
+            .orElseGet(() -> Response.status(Response.Status.NOT_FOUND).entity(new ErrorDTO(1, TextFormatter.formatMessage("Import {0} not found", jobId))).build());
+    }
+
+}
@@ -4,7 +4,16 @@
  */
 package pt.cmg.aeminium.identity.api.rest.v1.resources.users;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
@@ -15,11 +24,13 @@ import jakarta.annotation.security.PermitAll;
 import jakarta.annotation.security.RolesAllowed;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
 import jakarta.transaction.Transactional;
 import jakarta.transaction.Transactional.TxType;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import jakarta.ws.rs.BeanParam;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.GET;
@@ -28,19 +39,28 @@ import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import jakarta.ws.rs.core.UriInfo;
 import pt.cmg.aeminium.datamodel.users.dao.identity.UserDAO;
 import pt.cmg.aeminium.datamodel.users.dao.identity.UserDAO.UserFilter;
 import pt.cmg.aeminium.datamodel.users.entities.identity.Role;
 import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.api.rest.v1.IdentityApplication;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.converters.UserConverter;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.CreateUserDTO;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.EditUserDTO;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.SearchUsersFilterDTO;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserCreationResultDTO;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserDTO;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.validators.UserValidator;
+import pt.cmg.aeminium.identity.configuration.jsonb.JsonbProvider;
+import pt.cmg.aeminium.identity.tasks.users.EmailNormaliser;
 import pt.cmg.aeminium.identity.tasks.users.UserCreator;
+import pt.cmg.aeminium.identity.tasks.users.UserCursor;
+import pt.cmg.aeminium.identity.tasks.users.UserFinder;
 import pt.cmg.jakartautils.errors.ErrorDTO;
 import pt.cmg.jakartautils.text.TextFormatter;
 
@@ -53,6 +73,12 @@ import pt.cmg.jakartautils.text.TextFormatter;
 @Tag(name = "Users", description = "Endpoints related operations with users")
 public class UserResource {
 
+    private static final long MAX_PAGE_SIZE = 1000;
+
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+
     @Inject
     private UserCreator userCreator;
 
@@ -62,6 +88,9 @@ public class UserResource {
     @Inject
     private UserValidator userValidator;
 
+    @Inject
+    private UserFinder userFinder;
+
     @GET
     @Path("{id}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -98,7 +127,9 @@ public class UserResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Operation(
         summary = "Searches for users",
-        description = "Obtains a paginated list of users given a set of user input filters",
+        description = "Obtains a paginated list of users given a set of user input filters. "
+            + "Pages are either by offset or, when the cursor parameter is present (empty for the first page), by keyset: "
+            + "the cursor of the next page is then returned in the aem-next-cursor header and in a next Link",
         operationId = "GET_users_filterd")
     @APIResponse(
         responseCode = "200",
@@ -121,11 +152,85 @@ public class UserResource {
                             }
                         ]
                 """))
-    public Response getUsers(@Valid @BeanParam SearchUsersFilterDTO filter) {
+    public Response getUsers(@Valid @BeanParam SearchUsersFilterDTO filter, @Context UriInfo uriInfo) {
+
+        if (filter.cursor != null) {
+            return getUsersPage(filter, uriInfo);
+        }
+
+        // The same email match as the keyset pages, see UserFinder
+        List<User> users = userDAO.findByFiltered(new UserFilter(filter.status, filter.roles, EmailNormaliser.normalise(filter.email), filter.size, filter.offset));
+
+        return Response.ok(UserConverter.toUsersDTO(users, userFinder.findRoles(users))).build();
+    }
+
+    /**
+     * Keyset pagination: the body is the same list, the cursor of the next page goes in a header and in a "next" link.
+     * There is no next page when neither is present.
+     */
+    private Response getUsersPage(SearchUsersFilterDTO filter, UriInfo uriInfo) {
+
+        var cursor = UserCursor.decode(filter.cursor);
+        if (cursor.isEmpty()) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(List.of(new ErrorDTO(1, "Invalid cursor"))).build();
+        }
+
+        int size = (int) Math.min(filter.size, MAX_PAGE_SIZE);
+
+        // One more than asked for, so the last page is known without the client having to fetch an empty one
+        List<User> users = userFinder.findPage(filter, cursor.get(), size + 1);
 
-        List<User> users = userDAO.findByFiltered(new UserFilter(filter.status, filter.roles, filter.email, filter.size, filter.offset));
+        if (users.size() <= size || size == 0) {
+            return Response.ok(UserConverter.toUsersDTO(users.subList(0, Math.min(size, users.size())))).build();
+        }
+
+        List<User> page = users.subList(0, size);
+        String nextCursor = new UserCursor(page.get(size - 1).getId()).encode();
 
-        return Response.ok(UserConverter.toUsersDTO(users)).build();
+        return Response.ok(UserConverter.toUsersDTO(page))
+            .header(IdentityApplication.RESPONSE_HEADER_NEXT_CURSOR, nextCursor)
+            .link(uriInfo.getRequestUriBuilder().replaceQueryParam("cursor", nextCursor).replaceQueryParam("offset").build(), "next")
+            .build();
+    }
+
+    @GET
+    @Path("export")
+    @Transactional(value = TxType.SUPPORTS)
+    @RolesAllowed({"GOD", "SCHOLAR"})
+    @Produces(MEDIA_TYPE_NDJSON)
+    @Operation(
+        summary = "Exports users",
+        description = "Streams every user that matches the filters as newline delimited JSON, one user per line in id order. "
+            + "The paging parameters are ignored",
+        operationId = "GET_users_export")
+    @APIResponse(
+        responseCode = "200",
+        description = "One UserDTO per line",
+        content = @Content(mediaType = MEDIA_TYPE_NDJSON, schema = @Schema(ref = "#/components/schemas/UserDTO")))
+    public Response exportUsers(@Valid @BeanParam SearchUsersFilterDTO filter) {
+
+        Jsonb jsonb = JsonbProvider.getJsonB();
+
+        // Runs after this method returns, the users are read in their own transaction while the response is written
+        StreamingOutput export = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            try {
+                userFinder.forEachUser(filter, user -> {
+                    try {
+                        writer.write(jsonb.toJson(UserConverter.toUserDTO(user)));
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // Usually the client went away, which also ends the query
+                throw e.getCause();
+            }
+            writer.flush();
+        };
+
+        return Response.ok(export).build();
     }
 
     @POST
@@ -154,6 +259,47 @@ public class UserResource {
         return Response.ok(UserConverter.toUserDTO(newUser)).build();
     }
 
+    @POST
+    @Path("batch")
+    @RolesAllowed({"GOD", "SCHOLAR"})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Operation(
+        summary = "Creates many Users",
+        description = "Creates the valid users of the list in one transaction, the invalid ones are left out. "
+            + "Returns one result per user of the request, in the same order",
+        operationId = "POST_users_batch")
+    @APIResponse(
+        responseCode = "200",
+        description = "Returns, for each user, either the created user or the reasons it was not created",
+        content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(type = SchemaType.ARRAY, implementation = UserCreationResultDTO.class)))
+    @APIResponse(
+        responseCode = "400",
+        description = "The list is empty or too long. Returns a list of the Errors",
+        content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(type = SchemaType.ARRAY, implementation = ErrorDTO.class)))
+    public Response createUsers(
+        @NotEmpty(message = "1001-Users cannot be empty") @Size(max = MAX_BATCH_SIZE, message = "1002-Too many users in one request") List<@NotNull CreateUserDTO> userDTOs) {
+
+        Map<Integer, List<ErrorDTO>> validationErrors = userValidator.isValidUsersForCreation(userDTOs);
+
+        List<CreateUserDTO> validUsers = new ArrayList<>();
+        for (int index = 0; index < userDTOs.size(); index++) {
+            if (!validationErrors.containsKey(index)) {
+                validUsers.add(userDTOs.get(index));
+            }
+        }
+
+        Iterator<User> newUsers = (validUsers.isEmpty() ? List.<User>of() : userCreator.createUsers(validUsers)).iterator();
+
+        List<UserCreationResultDTO> results = new ArrayList<>(userDTOs.size());
+        for (int index = 0; index < userDTOs.size(); index++) {
+            List<ErrorDTO> errors = validationErrors.get(index);
+            results.add(errors == null ? UserCreationResultDTO.created(index, UserConverter.toUserDTO(newUsers.next())) : UserCreationResultDTO.rejected(index, errors));
+        }
+
+        return Response.ok(results).build();
+    }
+
     @PUT
     @Path("{id}")
     @Consumes(MediaType.APPLICATION_JSON)
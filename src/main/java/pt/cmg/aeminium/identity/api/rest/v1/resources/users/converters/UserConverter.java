@@ -6,6 +6,7 @@ package pt.cmg.aeminium.identity.api.rest.v1.resources.users.converters;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import pt.cmg.aeminium.datamodel.users.entities.identity.Role;
 import pt.cmg.aeminium.datamodel.users.entities.identity.User;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserDTO;
@@ -16,37 +17,42 @@ import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserDTO
 public class UserConverter {
 
     public static UserDTO toUserDTO(User user) {
-        return new UserDTO(user.getId(),
-            user.getName(),
-            user.getEmail(),
-            user.getLanguage(),
-            user.getStatus(),
-            user.getCreatedAt(),
-            user.getRoles().stream().map(rl -> rl.getName().toString()).toList());
-
+        return toUserDTO(user, user.getRoles().stream().map(Role::getName).toList());
     }
 
-    public static List<UserDTO> toUsersDTO(List<User> users) {
+    /**
+     * Same as {@link #toUsersDTO(List)}, but with the roles of each user by user id, so the lazy roles collection of the users is never loaded
+     */
+    public static List<UserDTO> toUsersDTO(List<User> users, Map<Long, List<Role.Name>> rolesByUser) {
 
-        List<UserDTO> usersDTO = new ArrayList<>();
+        List<UserDTO> usersDTO = new ArrayList<>(users.size());
 
         for (User user : users) {
+            usersDTO.add(toUserDTO(user, rolesByUser.getOrDefault(user.getId(), List.of())));
+        }
 
-            List<Role> roles = user.getRoles();
+        return usersDTO;
+    }
 
-            UserDTO dto = new UserDTO(user.getId(),
-                user.getName(),
-                user.getEmail(),
-                user.getLanguage(),
-                user.getStatus(),
-                user.getCreatedAt(),
-                roles.stream().map(rl -> rl.getName().toString()).toList());
+    public static List<UserDTO> toUsersDTO(List<User> users) {
 
-            usersDTO.add(dto);
+        List<UserDTO> usersDTO = new ArrayList<>(users.size());
 
+        for (User user : users) {
+            usersDTO.add(toUserDTO(user));
         }
 
         return usersDTO;
 
     }
+
+    private static UserDTO toUserDTO(User user, List<Role.Name> roles) {
+        return new UserDTO(user.getId(),
+            user.getName(),
+            user.getEmail(),
+            user.getLanguage(),
+            user.getStatus(),
+            user.getCreatedAt(),
+            roles.stream().map(Role.Name::name).toList());
+    }
 }
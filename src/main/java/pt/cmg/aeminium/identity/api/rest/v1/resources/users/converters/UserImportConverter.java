@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.api.rest.v1.resources.users.converters;
+
+import java.io.StringReader;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonReader;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserImportStatusDTO;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response.UserImportStatusDTO.RowErrorDTO;
+import pt.cmg.aeminium.identity.tasks.users.imports.UserImportStatus;
+
+/**
+ * @author Carlos Gonçalves
+ */
+public class UserImportConverter {
+
+    public static UserImportStatusDTO toUserImportStatusDTO(UserImportStatus status) {
+        return new UserImportStatusDTO(status.jobId(),
+            status.state(),
+            status.submittedAt(),
+            status.startedAt(),
+            status.finishedAt(),
+            status.rowsRead(),
+            status.rowsCreated(),
+            status.rowsRejected(),
+            status.getRowsPerSecond(System.currentTimeMillis()),
+            status.failure(),
+            status.rowErrors().stream().map(rowError -> new RowErrorDTO(rowError.line(), readErrors(rowError.errorsJson()))).toList());
+    }
+
+    private static JsonArray readErrors(String errorsJson) {
+        try (JsonReader reader = Json.createReader(new StringReader(errorsJson))) {
+            return reader.readArray();
+        }
+    }
+
+}
@@ -36,4 +36,10 @@ public class SearchUsersFilterDTO {
     @Min(value = 0)
     public Long offset;
 
+    /**
+     * Opaque position of a keyset walk, as returned by the previous page. When present (even empty, for the first page) offset is ignored.
+     */
+    @QueryParam("cursor")
+    public String cursor;
+
 }
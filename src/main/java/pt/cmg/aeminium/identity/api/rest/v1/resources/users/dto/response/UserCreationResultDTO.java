@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response;
+
+import java.util.List;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import jakarta.json.bind.annotation.JsonbPropertyOrder;
+import pt.cmg.jakartautils.errors.ErrorDTO;
+
+/**
+ * @author Carlos Gonçalves
+ */
+@JsonbPropertyOrder({"index", "user", "errors"})
+@Schema(description = "The outcome of one of the users of a bulk creation: either the created user or the reasons it was not created", example = """
+    {
+        "index": 3,
+        "user": null,
+        "errors" : [{"code": 4, "description": "Email already in use"}]}
+    """)
+public record UserCreationResultDTO(
+    int index,
+    UserDTO user,
+    List<ErrorDTO> errors) {
+
+    public static UserCreationResultDTO created(int index, UserDTO user) {
+        return new UserCreationResultDTO(index, user, List.of());
+    }
+
+    public static UserCreationResultDTO rejected(int index, List<ErrorDTO> errors) {
+        return new UserCreationResultDTO(index, null, errors);
+    }
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.response;
+
+import java.util.List;
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+import jakarta.json.JsonArray;
+import jakarta.json.bind.annotation.JsonbPropertyOrder;
+import pt.cmg.aeminium.identity.tasks.users.imports.UserImportStatus.State;
+
+/**
+ * @author Carlos Gonçalves
+ */
+@JsonbPropertyOrder({"jobId", "state", "submittedAt", "startedAt", "finishedAt", "rowsRead", "rowsCreated", "rowsRejected", "rowsPerSecond", "failure", "rowErrors"})
+@Schema(description = "Progress of a bulk user import. Times are epoch milliseconds, only the first errors are listed", example = """
+    {
+        "jobId": "5b0c6f3e-8f1e-4a55-9d51-2f6f0e0c2a11",
+        "state": "RUNNING",
+        "submittedAt": 1729252800000,
+        "startedAt": 1729252800120,
+        "finishedAt": null,
+        "rowsRead": 12000,
+        "rowsCreated": 11998,
+        "rowsRejected": 2,
+        "rowsPerSecond": 1530.6,
+        "failure": null,
+        "rowErrors" : [{"line": 17, "errors": [{"code": 4, "description": "Email already in use"}]}]}
+    """)
+public record UserImportStatusDTO(
+    String jobId,
+    State state,
+    Long submittedAt,
+    Long startedAt,
+    Long finishedAt,
+    long rowsRead,
+    long rowsCreated,
+    long rowsRejected,
+    double rowsPerSecond,
+    String failure,
+    List<RowErrorDTO> rowErrors) {
+
+    public record RowErrorDTO(long line, JsonArray errors) {
+    }
+
+}
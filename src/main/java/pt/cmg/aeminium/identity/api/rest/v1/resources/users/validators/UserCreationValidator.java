@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.api.rest.v1.resources.users.validators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import pt.cmg.aeminium.datamodel.users.entities.identity.Role;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.CreateUserDTO;
+import pt.cmg.aeminium.identity.tasks.users.EmailNormaliser;
+import pt.cmg.aeminium.identity.tasks.users.PasswordConstrainer;
+import pt.cmg.aeminium.identity.tasks.users.UserFinder;
+import pt.cmg.jakartautils.errors.ErrorDTO;
+
+/**
+ * The creation rules, which do not depend on who is calling, so they can also run outside of a request (bulk imports).
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class UserCreationValidator {
+
+    @Inject
+    private UserFinder userFinder;
+
+    @Inject
+    private Validator validator;
+
+    public Optional<List<ErrorDTO>> isValidUserForCreation(CreateUserDTO userDTO) {
+        List<ErrorDTO> errors = new ArrayList<>();
+
+        if (!PasswordConstrainer.isAcceptablePassword(userDTO.password, false)) {
+            errors.add(new ErrorDTO(1, "Password does not comply to acceptable standards"));
+        }
+
+        if (userDTO.roles.contains(Role.Name.GOD)) {
+            errors.add(new ErrorDTO(2, "There is only one GOD"));
+        }
+
+        return errors.isEmpty() ? Optional.empty() : Optional.of(errors);
+    }
+
+    /**
+     * Validates each of the users of a bulk creation on its own: the bean constraints of {@link CreateUserDTO}, the same rules as a
+     * single creation, and unique emails, both within the list and against the existing users (one query for all of them).
+     * Returns the errors by index of the rejected users, the users without an entry are fit to be created.
+     */
+    public Map<Integer, List<ErrorDTO>> isValidUsersForCreation(List<CreateUserDTO> userDTOs) {
+
+        Map<Integer, List<ErrorDTO>> errorsByIndex = new HashMap<>();
+
+        Set<String> existingEmails = userFinder.findExistingEmails(userDTOs.stream()
+            .map(userDTO -> userDTO.email)
+            .filter(email -> email != null && !email.isBlank())
+            .toList());
+
+        Set<String> requestEmails = new HashSet<>();
+
+        for (int index = 0; index < userDTOs.size(); index++) {
+
+            CreateUserDTO userDTO = userDTOs.get(index);
+
+            List<ErrorDTO> errors = new ArrayList<>(validator.validate(userDTO).stream().map(UserCreationValidator::toErrorDTO).toList());
+
+            // The creation rules assume the constraints hold (a password and roles)
+            if (errors.isEmpty()) {
+                isValidUserForCreation(userDTO).ifPresent(errors::addAll);
+
+                String email = EmailNormaliser.normalise(userDTO.email);
+                if (existingEmails.contains(email)) {
+                    errors.add(new ErrorDTO(4, "Email already in use"));
+                } else if (!requestEmails.add(email)) {
+                    errors.add(new ErrorDTO(5, "Email repeated in the request"));
+                }
+            }
+
+            if (!errors.isEmpty()) {
+                errorsByIndex.put(index, errors);
+            }
+        }
+
+        return errorsByIndex;
+    }
+
+    /**
+     * Constraint messages are "code-description", as ConstraintViolationExceptionMapper expects them
+     */
+    private static ErrorDTO toErrorDTO(ConstraintViolation<?> violation) {
+
+        String message = violation.getMessage();
+        int separator = message.indexOf('-');
+
+        try {
+            return new ErrorDTO(Integer.parseInt(message.substring(0, separator)), message.substring(separator + 1));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return new ErrorDTO(0, violation.getPropertyPath() + " " + message);
+        }
+    }
+
+}
@@ -6,12 +6,11 @@ package pt.cmg.aeminium.identity.api.rest.v1.resources.users.validators;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
-import org.eclipse.microprofile.jwt.Claim;
-import org.eclipse.microprofile.jwt.Claims;
 import jakarta.enterprise.context.RequestScoped;
 import jakarta.inject.Inject;
+import jakarta.security.enterprise.SecurityContext;
 import pt.cmg.aeminium.datamodel.users.dao.identity.UserDAO;
 import pt.cmg.aeminium.datamodel.users.entities.identity.Role;
 import pt.cmg.aeminium.datamodel.users.entities.identity.User;
@@ -19,7 +18,7 @@ import pt.cmg.aeminium.identity.api.rest.v1.filters.request.RequestContextData;
 import pt.cmg.aeminium.identity.api.rest.v1.filters.request.RequestData;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.CreateUserDTO;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.EditUserDTO;
-import pt.cmg.aeminium.identity.tasks.users.PasswordConstrainer;
+import pt.cmg.aeminium.identity.tasks.users.EmailNormaliser;
 import pt.cmg.jakartautils.errors.ErrorDTO;
 
 /**
@@ -32,25 +31,25 @@ public class UserValidator {
     @RequestData
     private RequestContextData requestData;
 
+    // The caller set by JWTAuthenticationMechanism, whose roles are the token groups. There is no MicroProfile JWT runtime to inject claims from.
     @Inject
-    @Claim(standard = Claims.groups)
-    private Set<String> roles;
+    private SecurityContext securityContext;
 
     @Inject
     private UserDAO userDAO;
 
-    public Optional<List<ErrorDTO>> isValidUserForCreation(CreateUserDTO userDTO) {
-        List<ErrorDTO> errors = new ArrayList<>();
-
-        if (!PasswordConstrainer.isAcceptablePassword(userDTO.password, false)) {
-            errors.add(new ErrorDTO(1, "Password does not comply to acceptable standards"));
-        }
+    @Inject
+    private UserCreationValidator userCreationValidator;
 
-        if (userDTO.roles.contains(Role.Name.GOD)) {
-            errors.add(new ErrorDTO(2, "There is only one GOD"));
-        }
+    public Optional<List<ErrorDTO>> isValidUserForCreation(CreateUserDTO userDTO) {
+        return userCreationValidator.isValidUserForCreation(userDTO);
+    }
 
-        return errors.isEmpty() ? Optional.empty() : Optional.of(errors);
+    /**
+     * See {@link UserCreationValidator#isValidUsersForCreation(List)}
+     */
+    public Map<Integer, List<ErrorDTO>> isValidUsersForCreation(List<CreateUserDTO> userDTOs) {
+        return userCreationValidator.isValidUsersForCreation(userDTOs);
     }
 
     public Optional<List<ErrorDTO>> isValidUserForEdition(Long userId, EditUserDTO userDTO) {
@@ -65,12 +64,12 @@ public class UserValidator {
         }
 
         User callingUser = userDAO.findById(requestData.getUserId());
-        if (!userId.equals(callingUser.getId()) && !roles.contains(Role.GOD)) {
+        if (!userId.equals(callingUser.getId()) && !securityContext.isCallerInRole(Role.Name.GOD.name())) {
             errors.add(new ErrorDTO(3, "User can only change its own data"));
         }
 
         if (userDTO.email != null && !userDTO.email.isBlank()) {
-            if (userDAO.findByEmail(userDTO.email) != null) {
+            if (userDAO.findByEmail(EmailNormaliser.normalise(userDTO.email)) != null) {
                 errors.add(new ErrorDTO(4, "Email already in use"));
             }
         }
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free Bloom filter of strings. {@link #mightContain(String)} never misses a value that was added,
+ * but may say yes to one that was not, at roughly the false positive rate it was sized for.
+ * <br>
+ * Values can not be removed, so filters are meant to be rebuilt from the source of truth now and then.
+ * The k bit positions come from two halves of a single 64 bit hash (Kirsch and Mitzenmacher).
+ *
+ * @author Carlos Gonçalves
+ */
+final class BloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashCount;
+
+    BloomFilter(long expectedValues, double falsePositiveRate) {
+
+        long optimalBits = (long) Math.ceil(-expectedValues * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (optimalBits + 63) / 64));
+
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = wordCount * 64L;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / expectedValues * Math.log(2)));
+    }
+
+    void add(String value) {
+
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    boolean mightContain(String value) {
+
+        long hash = hash(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Integer.toUnsignedLong(h1 + i * h2) % bitCount;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // FNV-1a over the chars, then the MurmurHash3 finaliser so both halves are well mixed
+    private static long hash(String value) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+}
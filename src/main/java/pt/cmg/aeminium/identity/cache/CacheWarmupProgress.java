@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the progress of the cache warmup, which runs in the background.
+ * It is written by the warmup threads and read by the health checks, so every field is safely published.
+ *
+ * @author Carlos Gonçalves
+ */
+public class CacheWarmupProgress {
+
+    public enum Stage {
+        PENDING,
+        LOADING,
+        DONE,
+        FAILED
+    }
+
+    private volatile Stage stage = Stage.PENDING;
+
+    private final LongAdder countries = new LongAdder();
+    private final LongAdder defaultTexts = new LongAdder();
+    private final LongAdder translatedTexts = new LongAdder();
+
+    public void start() {
+        countries.reset();
+        defaultTexts.reset();
+        translatedTexts.reset();
+        stage = Stage.LOADING;
+    }
+
+    public void finish() {
+        stage = Stage.DONE;
+    }
+
+    public void fail() {
+        stage = Stage.FAILED;
+    }
+
+    public void addCountries(long count) {
+        countries.add(count);
+    }
+
+    public void addDefaultTexts(long count) {
+        defaultTexts.add(count);
+    }
+
+    public void addTranslatedTexts(long count) {
+        translatedTexts.add(count);
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public long getCountries() {
+        return countries.sum();
+    }
+
+    public long getDefaultTexts() {
+        return defaultTexts.sum();
+    }
+
+    public long getTranslatedTexts() {
+        return translatedTexts.sum();
+    }
+
+}
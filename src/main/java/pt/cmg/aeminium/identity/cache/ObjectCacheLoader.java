@@ -4,20 +4,34 @@
  */
 package pt.cmg.aeminium.identity.cache;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.persistence.jpa.JpaCache;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
 import jakarta.ejb.Asynchronous;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
 import jakarta.ejb.Singleton;
 import jakarta.ejb.Startup;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
 import jakarta.inject.Inject;
 import jakarta.persistence.Cache;
+import jakarta.persistence.CacheStoreMode;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.PersistenceUnit;
@@ -30,14 +44,21 @@ import pt.cmg.jakartautils.jpa.QueryUtils;
 import pt.cmg.jakartautils.text.TextFormatter;
 
 /**
+ * Loads the JPA shared cache and the Hazelcast translations at startup.
+ * The loading runs in the background, so the deployment (HTTP listener, liveness) is not held back by it,
+ * and the readiness check stays DOWN until it is done. A failed load is tried again, backing off, until it succeeds.
+ *
  * @author Carlos Gonçalves
  */
 @Singleton
 @Startup
+@Lock(LockType.READ)
 public class ObjectCacheLoader {
 
     private static final Logger LOGGER = Logger.getLogger(ObjectCacheLoader.class.getName());
 
+    private static final String CACHE_STORE_MODE_HINT = "jakarta.persistence.cache.storeMode";
+
     @PersistenceUnit(unitName = "aem-data")
     private EntityManagerFactory entityManagerFactory;
 
@@ -46,6 +67,35 @@ public class ObjectCacheLoader {
     @ConfigProperty(name = "jpa.cache.loadAtStartup", defaultValue = "true")
     private boolean loadCacheAtStartup;
 
+    // Independent entity groups and text loads run in parallel on this many threads
+    @Inject
+    @ConfigProperty(name = "jpa.cache.warmupThreads", defaultValue = "4")
+    private int warmupThreads;
+
+    // Texts are read in chunks of this many ids, keeping the IN lists well below the PostgreSQL bind parameter limit
+    @Inject
+    @ConfigProperty(name = "jpa.cache.warmupChunkSize", defaultValue = "1000")
+    private int warmupChunkSize;
+
+    // A failed startup load is tried again after this many seconds, doubled after every failure up to the maximum
+    @Inject
+    @ConfigProperty(name = "jpa.cache.warmupRetrySeconds", defaultValue = "5")
+    private long warmupRetrySeconds;
+
+    @Inject
+    @ConfigProperty(name = "jpa.cache.warmupMaxRetrySeconds", defaultValue = "300")
+    private long warmupMaxRetrySeconds;
+
+    // A local snapshot of the translations lets a restart become ready right away, while the database is read in the background.
+    // Relative locations are resolved against the working directory
+    @Inject
+    @ConfigProperty(name = "translations.snapshot.enabled", defaultValue = "false")
+    private boolean snapshotEnabled;
+
+    @Inject
+    @ConfigProperty(name = "translations.snapshot.location", defaultValue = "translations.snapshot")
+    private String snapshotLocation;
+
     // @Inject
     // @ConfigProperty(name = "jpa.cache.refresh", defaultValue = "true")
     // private boolean refreshCacheEnabled;
@@ -57,22 +107,126 @@ public class ObjectCacheLoader {
     @Inject
     private TextTranslationCache hazelcastCache;
 
-    private boolean isCacheReady = false;
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ExecutorService warmupExecutor;
+
+    private final CacheWarmupProgress warmupProgress = new CacheWarmupProgress();
+
+    // Written by the warmup threads and read by the health checks
+    private volatile boolean isCacheReady = false;
+
+    // Held by the startup warmup and by refreshes, only one of them runs at a time since they share the warmup progress
+    private final AtomicBoolean isLoading = new AtomicBoolean(false);
 
     public boolean isCacheReady() {
         return isCacheReady;
     }
 
+    public CacheWarmupProgress getWarmupProgress() {
+        return warmupProgress;
+    }
+
     @PostConstruct
     public void loadCacheAtStartup() {
-        if (loadCacheAtStartup) {
-            LOGGER.info("Loading Cache at startup is active. Loading objects and query results to memory.");
-            loadObjectCache();
-        } else {
+
+        warmupExecutor = Executors.newFixedThreadPool(warmupThreads, threadFactory);
+
+        if (!loadCacheAtStartup) {
             LOGGER.warning("No objects/queries will be loaded at startup, but cache will still be available whenever objects are loaded from database.");
+            warmupProgress.finish();
+            isCacheReady = true;
+            return;
+        }
+
+        LOGGER.info("Loading Cache at startup is active. Loading objects and query results to memory in the background.");
+
+        // With a snapshot the translations are served right away and the database load below only reconciles them
+        if (snapshotEnabled && restoreTranslationsSnapshot()) {
+            isCacheReady = true;
+        }
+
+        // Nothing else can hold it yet, a refresh requested during the warmup is skipped until it ends
+        isLoading.set(true);
+        warmUp(warmupRetrySeconds);
+    }
+
+    /**
+     * Loads the cache for the first time, holding isLoading. A failure (usually a database that is not up yet) lets go of it
+     * and tries again after retryDelaySeconds, so readiness does not stay DOWN for good.
+     */
+    private void warmUp(long retryDelaySeconds) {
+
+        warmupProgress.start();
+
+        loadObjectCache(false).whenComplete((result, error) -> {
+            try {
+                if (error != null) {
+                    LOGGER.log(Level.SEVERE, TextFormatter.formatMessage("Failed loading Object cache, trying again in {0} seconds. "
+                        + "Readiness will stay DOWN until then unless a snapshot was restored.", retryDelaySeconds), error);
+                    warmupProgress.fail();
+                    scheduleWarmupRetry(retryDelaySeconds);
+                    return;
+                }
+
+                warmupProgress.finish();
+                isCacheReady = true;
+
+                if (snapshotEnabled) {
+                    writeTranslationsSnapshot();
+                }
+            } finally {
+                isLoading.set(false);
+            }
+        });
+    }
+
+    private void scheduleWarmupRetry(long delaySeconds) {
+        CompletableFuture.runAsync(() -> retryWarmup(delaySeconds), CompletableFuture.delayedExecutor(delaySeconds, TimeUnit.SECONDS, warmupExecutor));
+    }
+
+    private void retryWarmup(long delaySeconds) {
+
+        // A refresh that ran in the meantime already loaded it
+        if (warmupProgress.getStage() == CacheWarmupProgress.Stage.DONE) {
+            return;
+        }
+
+        // A refresh is running, if it fails too the warmup is tried again
+        if (!isLoading.compareAndSet(false, true)) {
+            scheduleWarmupRetry(delaySeconds);
+            return;
         }
 
-        isCacheReady = true;
+        warmUp(Math.min(delaySeconds * 2, warmupMaxRetrySeconds));
+    }
+
+    private boolean restoreTranslationsSnapshot() {
+        try {
+            var snapshotDate = hazelcastCache.restoreSnapshot(Paths.get(snapshotLocation).toAbsolutePath());
+
+            snapshotDate.ifPresent(date -> LOGGER.info(TextFormatter.formatMessage("Restored translations snapshot from {0}", date)));
+
+            return snapshotDate.isPresent();
+
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not restore the translations snapshot, loading from the database only", e);
+            return false;
+        }
+    }
+
+    private void writeTranslationsSnapshot() {
+        try {
+            hazelcastCache.writeSnapshot(Paths.get(snapshotLocation).toAbsolutePath());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not write the translations snapshot", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdownWarmup() {
+        warmupExecutor.shutdownNow();
     }
 
     /**
@@ -84,15 +238,37 @@ public class ObjectCacheLoader {
     // }
     // }
 
+    /**
+     * Reloads the cached data in place, without evicting anything first.
+     * Entities are re-read into the JPA shared cache (store mode REFRESH) and only the translations whose text changed
+     * are written to Hazelcast, so the old data keeps being served until the new one replaces it and readiness never changes.
+     */
     @Asynchronous
     public void refreshCache() {
 
-        isCacheReady = false;
-
-        invalidateAllCaches();
-        loadObjectCache();
+        // The warmup or a refresh already running will pick up the same changes
+        if (!isLoading.compareAndSet(false, true)) {
+            LOGGER.info("The cache is already being loaded, skipping this refresh");
+            return;
+        }
 
-        isCacheReady = true;
+        try {
+            warmupProgress.start();
+            loadObjectCache(true).join();
+            warmupProgress.finish();
+
+            // Only matters if the startup warmup failed, otherwise it is already true
+            isCacheReady = true;
+
+            if (snapshotEnabled) {
+                writeTranslationsSnapshot();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed refreshing Object cache. The previous data is still being served.", e);
+            warmupProgress.fail();
+        } finally {
+            isLoading.set(false);
+        }
     }
 
     /**
@@ -103,87 +279,117 @@ public class ObjectCacheLoader {
      */
     public void invalidateAllCaches() {
 
-        isCacheReady = false;
-
         Cache appCache = entityManagerFactory.getCache();
         appCache.evictAll();
 
         if (appCache instanceof JpaCache cache) {
             cache.clearQueryCache();
         }
-
-        isCacheReady = true;
     }
 
     /**
      * Loads all the object cache.
      * This affects only objects that are accessed by their ID and nothing else.
+     * Each independent entity group is loaded in parallel. None of the warmup tasks blocks waiting for another one,
+     * they are chained instead, so a small pool can never deadlock.
+     *
+     * @param refresh true when the data is already cached and is being refreshed in place
      */
-    private void loadObjectCache() {
+    private CompletableFuture<Void> loadObjectCache(boolean refresh) {
         LOGGER.log(Level.INFO, "Started loading Object cache");
-        loadCountries();
-        LOGGER.log(Level.INFO, "Finished loading Object cache");
+
+        return CompletableFuture.allOf(loadCountries(refresh))
+            .thenRun(() -> LOGGER.log(Level.INFO, "Finished loading Object cache"));
+    }
+
+    public CompletableFuture<Void> loadCountries(boolean refresh) {
+        return CompletableFuture.supplyAsync(() -> findCountriesTextIds(refresh), warmupExecutor)
+            .thenCompose(textIds -> loadTextsToHazelcastCache(textIds, refresh))
+            .thenRun(() -> LOGGER.info(TextFormatter.formatMessage("Loaded {0} Countries objects and text translation to cache", warmupProgress.getCountries())));
     }
 
-    public void loadCountries() {
+    private Set<Long> findCountriesTextIds(boolean refresh) {
 
         EntityManager database = entityManagerFactory.createEntityManager();
 
         TypedQuery<Country> query = database.createNamedQuery(Country.QUERY_FIND_ALL, Country.class);
+        query.setHint(CACHE_STORE_MODE_HINT, refresh ? CacheStoreMode.REFRESH : CacheStoreMode.USE);
         var countries = query.getResultList();
 
         Set<Long> ids = countries.stream().map(Country::getNameTextContentId).collect(Collectors.toSet());
 
         database.close();
 
-        loadTextsToHazelcastCache(ids);
+        warmupProgress.addCountries(countries.size());
 
-        LOGGER.info(TextFormatter.formatMessage("Loaded {0} Countries objects and text translation to cache", countries.size()));
+        return ids;
     }
 
     /**
      * Loads Texts to Hazelcast.
      * This will store the translations on a cluster-shared cached data structure for fast access in all
-     * application instances.
+     * application instances. Default texts and translations do not depend on each other, so they are loaded in parallel.
      */
-    private void loadTextsToHazelcastCache(Collection<Long> textIds) {
+    private CompletableFuture<Void> loadTextsToHazelcastCache(Collection<Long> textIds, boolean refresh) {
 
         if (textIds == null || textIds.isEmpty()) {
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
-        loadDefaultTextsToHazelcastMap(textIds);
-        loadTranslatedTextsToHazelcast(textIds);
+        return CompletableFuture.allOf(
+            CompletableFuture.runAsync(() -> loadDefaultTextsToHazelcastMap(textIds, refresh), warmupExecutor),
+            CompletableFuture.runAsync(() -> loadTranslatedTextsToHazelcast(textIds, refresh), warmupExecutor));
     }
 
-    private void loadDefaultTextsToHazelcastMap(Collection<Long> textIds) {
-
-        EntityManager database = entityManagerFactory.createEntityManager();
-
-        TypedQuery<TextContent> query = database.createNamedQuery(TextContent.QUERY_FIND_IN_IDS, TextContent.class);
-        query.setParameter("ids", textIds);
-
-        List<TextContent> result = QueryUtils.getResultListFromQuery(query);
-
-        result.forEach(textContent -> hazelcastCache.putTranslation(textContent));
-
-        database.close();
+    private void loadDefaultTextsToHazelcastMap(Collection<Long> textIds, boolean refresh) {
+        loadTextsInChunks(textIds, TextContent.QUERY_FIND_IN_IDS, TextContent.class, refresh, chunk -> {
+            if (refresh) {
+                hazelcastCache.refreshDefaultTexts(chunk);
+            } else {
+                hazelcastCache.putDefaultTexts(chunk);
+            }
+            warmupProgress.addDefaultTexts(chunk.size());
+        });
+    }
 
+    private void loadTranslatedTextsToHazelcast(Collection<Long> textIds, boolean refresh) {
+        loadTextsInChunks(textIds, TranslatedText.QUERY_FIND_IN_IDS, TranslatedText.class, refresh, chunk -> {
+            if (refresh) {
+                hazelcastCache.refreshTranslatedTexts(chunk);
+            } else {
+                hazelcastCache.putTranslatedTexts(chunk);
+            }
+            warmupProgress.addTranslatedTexts(chunk.size());
+        });
     }
 
-    private void loadTranslatedTextsToHazelcast(Collection<Long> textIds) {
+    /**
+     * Runs an "IN (:ids)" query a chunk of ids at a time, handing each chunk of results over as soon as it is read.
+     * One huge IN list would hit the PostgreSQL bind parameter limit and materialise the whole catalogue at once.
+     * The persistence context is cleared after every chunk, so heap usage does not grow with the catalogue size.
+     */
+    private <T> void loadTextsInChunks(Collection<Long> textIds, String queryName, Class<T> type, boolean refresh, Consumer<List<T>> chunkConsumer) {
+
+        List<Long> ids = List.copyOf(textIds);
 
         EntityManager database = entityManagerFactory.createEntityManager();
 
-        TypedQuery<TranslatedText> query = database.createNamedQuery(TranslatedText.QUERY_FIND_IN_IDS, TranslatedText.class);
-        query.setParameter("ids", textIds);
+        try {
+            for (int start = 0; start < ids.size(); start += warmupChunkSize) {
 
-        List<TranslatedText> result = QueryUtils.getResultListFromQuery(query);
+                TypedQuery<T> query = database.createNamedQuery(queryName, type);
+                query.setParameter("ids", ids.subList(start, Math.min(start + warmupChunkSize, ids.size())));
+                query.setHint(CACHE_STORE_MODE_HINT, refresh ? CacheStoreMode.REFRESH : CacheStoreMode.USE);
 
-        result.forEach(translation -> hazelcastCache.putTranslation(translation));
+                List<T> result = QueryUtils.getResultListFromQuery(query);
 
-        database.close();
+                chunkConsumer.accept(result);
 
+                database.clear();
+            }
+        } finally {
+            database.close();
+        }
     }
 
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import com.hazelcast.config.IndexType;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.query.Predicates;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import pt.cmg.aeminium.identity.tasks.jwt.TokenHashes;
+import pt.cmg.aeminium.identity.tasks.jwt.UserClaims;
+
+/**
+ * Opaque refresh tokens, kept cluster wide in a Hazelcast map that expires them on its own.
+ * <br>
+ * Each entry holds the claims of the user, so a new access token can be minted without hashing a password or going to the database.
+ * Refresh tokens are single use: redeeming one removes it, and the client gets a new one together with the new access token.
+ * Only the hash of the token is stored.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class RefreshTokens {
+
+    private static final String REFRESH_TOKENS_MAP_NAME = "refresh-tokens";
+
+    // Read by Hazelcast from the record component field of UserClaims
+    private static final String USER_ID_ATTRIBUTE = "userId";
+
+    private static final int TOKEN_BYTES = 32;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    @Inject
+    @ConfigProperty(name = "jwt.refreshToken.validityHours", defaultValue = "72")
+    private long validityHours;
+
+    @Inject
+    private HazelcastInstance hazelcast;
+
+    // Hash of the refresh token -> claims of its user
+    private IMap<String, UserClaims> refreshTokens;
+
+    @PostConstruct
+    public void initialise() {
+        refreshTokens = hazelcast.getMap(REFRESH_TOKENS_MAP_NAME);
+        // Idempotent, every member asks for the same index. Without it, revoking the tokens of a user scans the whole map.
+        refreshTokens.addIndex(IndexType.HASH, USER_ID_ATTRIBUTE);
+    }
+
+    /**
+     * Creates a new refresh token for the user
+     */
+    public String issue(UserClaims user) {
+
+        byte[] randomBytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(randomBytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+
+        refreshTokens.set(TokenHashes.sha256(refreshToken), user, validityHours, TimeUnit.HOURS);
+
+        return refreshToken;
+    }
+
+    /**
+     * Uses up the refresh token. Returns the claims of its user, or empty if the token does not exist, has expired or was already used.
+     */
+    public Optional<UserClaims> redeem(String refreshToken) {
+        return Optional.ofNullable(refreshTokens.remove(TokenHashes.sha256(refreshToken)));
+    }
+
+    /**
+     * Drops every refresh token of the user, so the claims they carry never outlive a change to it.
+     * The userId index gives each partition the matching entries straight away, without deserialising the others.
+     */
+    public void revokeUser(Long userId) {
+        refreshTokens.removeAll(Predicates.equal(USER_ID_ATTRIBUTE, userId));
+    }
+
+    public Duration getValidity() {
+        return Duration.ofHours(validityHours);
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.inject.Inject;
+import pt.cmg.aeminium.identity.communication.cdievents.EventPublisher;
+import pt.cmg.aeminium.identity.tasks.jwt.VerifiedToken;
+
+/**
+ * The list of revoked tokens (by jti). The source of truth is a Hazelcast map whose entries expire together with the tokens.
+ * <br>
+ * Checking that map on every request would be a network call, so every member keeps a local Bloom filter of the revoked ids.
+ * A token that is not in the filter (almost all of them) is accepted after an in-memory probe, only filter hits go to the map.
+ * <br>
+ * A revocation reaches the other members through a cluster event, usually within milliseconds. Events are not guaranteed
+ * to arrive, so the filter is also rebuilt from the map every "jwt.revocation.resyncSeconds": that is the upper bound
+ * for a revocation to be seen everywhere. The rebuild also drops the ids of tokens that have expired since.
+ *
+ * @author Carlos Gonçalves
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class RevokedTokens {
+
+    private static final Logger LOGGER = Logger.getLogger(RevokedTokens.class.getName());
+
+    private static final String REVOKED_TOKENS_MAP_NAME = "revoked-tokens";
+
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    @Inject
+    @ConfigProperty(name = "jwt.revocation.expectedTokens", defaultValue = "100000")
+    private long expectedRevokedTokens;
+
+    @Inject
+    @ConfigProperty(name = "jwt.revocation.resyncSeconds", defaultValue = "30")
+    private long resyncSeconds;
+
+    // Tokens are still accepted for this long after exp (see JWTokenVerifier), so revocations must outlive them by as much
+    @Inject
+    @ConfigProperty(name = "mp.jwt.verify.clock.skew", defaultValue = "60")
+    private long clockSkewSeconds;
+
+    @Inject
+    private HazelcastInstance hazelcast;
+
+    @Inject
+    private EventPublisher eventPublisher;
+
+    @Inject
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Resource
+    private TimerService timerService;
+
+    // jti -> exp
+    private IMap<String, Long> revokedTokens;
+
+    private volatile BloomFilter bloomFilter;
+
+    // Set while a rebuild is reading the map, so the revocations that arrive meanwhile land in the new filter as well
+    private volatile BloomFilter rebuildingFilter;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder bloomHits = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    @PostConstruct
+    public void initialise() {
+        revokedTokens = hazelcast.getMap(REVOKED_TOKENS_MAP_NAME);
+        bloomFilter = new BloomFilter(expectedRevokedTokens, BLOOM_FALSE_POSITIVE_RATE);
+
+        rebuildBloomFilter();
+
+        long resyncMillis = TimeUnit.SECONDS.toMillis(resyncSeconds);
+        timerService.createIntervalTimer(resyncMillis, resyncMillis, new TimerConfig(null, false));
+    }
+
+    /**
+     * Revokes the token on every member. Tokens without a jti (none are minted anymore) can not be revoked.
+     */
+    public void revoke(VerifiedToken token) {
+
+        String tokenId = token.getTokenID();
+        if (tokenId == null) {
+            return;
+        }
+
+        long ttl = Math.max(1, token.getExpirationTime() + clockSkewSeconds - System.currentTimeMillis() / 1000);
+        revokedTokens.set(tokenId, token.getExpirationTime(), ttl, TimeUnit.SECONDS);
+
+        // Local first, the remaining cluster members do the same when the event arrives
+        onRevoked(tokenId);
+        eventPublisher.sendTokenRevokedEvent(tokenId);
+    }
+
+    /**
+     * Called for revocations made on this or any other member
+     */
+    public void onRevoked(String tokenId) {
+        addToBloomFilter(tokenId);
+        verifiedTokenCache.invalidateTokenId(tokenId);
+    }
+
+    public boolean isRevoked(String tokenId) {
+
+        if (tokenId == null) {
+            return false;
+        }
+
+        probes.increment();
+
+        if (!bloomFilter.mightContain(tokenId)) {
+            return false;
+        }
+
+        bloomHits.increment();
+
+        boolean revoked = revokedTokens.containsKey(tokenId);
+        if (!revoked) {
+            falsePositives.increment();
+        }
+
+        return revoked;
+    }
+
+    @Timeout
+    public void rebuildBloomFilter() {
+
+        try {
+            BloomFilter freshFilter = new BloomFilter(expectedRevokedTokens, BLOOM_FALSE_POSITIVE_RATE);
+            rebuildingFilter = freshFilter;
+
+            revokedTokens.keySet().forEach(freshFilter::add);
+
+            bloomFilter = freshFilter;
+        } catch (RuntimeException e) {
+            // The previous filter stays in use, it is never missing anything that it had
+            LOGGER.log(Level.WARNING, "Could not rebuild the revoked tokens filter", e);
+        } finally {
+            rebuildingFilter = null;
+        }
+    }
+
+    @Gauge(name = "jwt.revocation.probes", unit = MetricUnits.NONE, absolute = true, description = "Revocation checks")
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    @Gauge(name = "jwt.revocation.mapLookups", unit = MetricUnits.NONE, absolute = true, description = "Revocation checks that hit the Bloom filter and went to the cluster map")
+    public long getMapLookups() {
+        return bloomHits.sum();
+    }
+
+    @Gauge(name = "jwt.revocation.falsePositives", unit = MetricUnits.NONE, absolute = true, description = "Bloom filter hits for tokens that were not revoked")
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    private void addToBloomFilter(String tokenId) {
+
+        BloomFilter current = bloomFilter;
+        current.add(tokenId);
+
+        BloomFilter rebuilding = rebuildingFilter;
+        if (rebuilding != null) {
+            rebuilding.add(tokenId);
+        }
+
+        // A rebuild may have swapped the filter in the meantime, without this id in it
+        if (bloomFilter != current) {
+            bloomFilter.add(tokenId);
+        }
+    }
+
+}
@@ -4,8 +4,35 @@
  */
 package pt.cmg.aeminium.identity.cache;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.InvalidConfigurationException;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizePolicy;
+import com.hazelcast.config.NearCacheConfig;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.map.IMap;
+import com.hazelcast.nearcache.NearCacheStats;
+import com.hazelcast.partition.PartitionService;
 import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -21,7 +48,36 @@ import pt.cmg.aeminium.identity.api.rest.v1.filters.request.RequestData;
 @ApplicationScoped
 public class TextTranslationCache {
 
-    private static final String DEFAULT_LANG_MAP_NAME = "translations";
+    private static final Logger LOGGER = Logger.getLogger(TextTranslationCache.class.getName());
+
+    // The keys are now packed longs (see TranslationKey). The map was renamed so members still running the old version
+    // keep their String keyed map during a rolling deploy, instead of both versions writing incompatible keys to the same map.
+    private static final String DEFAULT_LANG_MAP_NAME = "text-translations";
+    private static final String LEGACY_LANG_MAP_NAME = "translations";
+
+    // Turn this on once no member of the cluster runs the String keyed version anymore
+    @Inject
+    @ConfigProperty(name = "translations.cache.destroyLegacyMap", defaultValue = "false")
+    private boolean destroyLegacyMap;
+
+    // Translations almost never change, so every member keeps a local copy of the ones it reads.
+    // Hazelcast invalidates that copy on every member whenever an entry is replaced.
+    @Inject
+    @ConfigProperty(name = "translations.nearcache.enabled", defaultValue = "true")
+    private boolean nearCacheEnabled;
+
+    @Inject
+    @ConfigProperty(name = "translations.nearcache.maxEntries", defaultValue = "10000")
+    private int nearCacheMaxEntries;
+
+    // Bulk loads are sent in batches of this size, with at most maxInFlight batches waiting for an answer at any time
+    @Inject
+    @ConfigProperty(name = "translations.bulk.batchSize", defaultValue = "1000")
+    private int bulkBatchSize;
+
+    @Inject
+    @ConfigProperty(name = "translations.bulk.maxInFlight", defaultValue = "4")
+    private int bulkMaxInFlight;
 
     @Inject
     private HazelcastInstance hazelcast;
@@ -30,11 +86,62 @@ public class TextTranslationCache {
     @RequestData
     private RequestContextData requestData;
 
-    private IMap<String, String> defaultTexts;
+    private IMap<Long, String> defaultTexts;
 
     @PostConstruct
     public void initTranslationMap() {
+
+        if (nearCacheEnabled) {
+            configureNearCache();
+        }
+
         defaultTexts = hazelcast.getMap(DEFAULT_LANG_MAP_NAME);
+
+        if (destroyLegacyMap) {
+            destroyLegacyTranslationMap();
+        }
+    }
+
+    /**
+     * Adds a near cache to the map configuration at runtime, since the Hazelcast configuration itself is owned by Payara.
+     * It must run before the map proxy is created on this member.
+     */
+    private void configureNearCache() {
+
+        EvictionConfig eviction = new EvictionConfig()
+            .setEvictionPolicy(EvictionPolicy.LRU)
+            .setMaxSizePolicy(MaxSizePolicy.ENTRY_COUNT)
+            .setSize(nearCacheMaxEntries);
+
+        // OBJECT format means a local read is a hash lookup, with no deserialisation.
+        // Local entries are cached as well because on a small cluster this member owns a good part of the keys
+        NearCacheConfig nearCache = new NearCacheConfig(DEFAULT_LANG_MAP_NAME)
+            .setInMemoryFormat(InMemoryFormat.OBJECT)
+            .setInvalidateOnChange(true)
+            .setCacheLocalEntries(true)
+            .setEvictionConfig(eviction);
+
+        // Start from whatever configuration applies to this map now, so nothing set in the Hazelcast XML is lost
+        MapConfig mapConfig = new MapConfig(hazelcast.getConfig().getMapConfig(DEFAULT_LANG_MAP_NAME))
+            .setName(DEFAULT_LANG_MAP_NAME)
+            .setNearCacheConfig(nearCache);
+
+        try {
+            hazelcast.getConfig().addMapConfig(mapConfig);
+        } catch (InvalidConfigurationException e) {
+            // Another member already registered a different configuration for this map, which the cluster will keep
+            LOGGER.log(Level.WARNING, "Could not configure the translations near cache", e);
+        }
+    }
+
+    private void destroyLegacyTranslationMap() {
+        boolean legacyMapExists = hazelcast.getDistributedObjects().stream()
+            .anyMatch(object -> LEGACY_LANG_MAP_NAME.equals(object.getName()));
+
+        if (legacyMapExists) {
+            hazelcast.getMap(LEGACY_LANG_MAP_NAME).destroy();
+            LOGGER.info("Destroyed the legacy String keyed translations map");
+        }
     }
 
     public void putTranslation(TextContent defaultLangText) {
@@ -46,27 +153,195 @@ public class TextTranslationCache {
     }
 
     public void putTranslation(Long id, Language language, String textContent) {
-        defaultTexts.putIfAbsent("%s_%s".formatted(id, language), textContent);
+        defaultTexts.putIfAbsent(TranslationKey.of(id, language), textContent);
+    }
+
+    /**
+     * Bulk version of {@link #putTranslation(TextContent)}, meant for cache warmup.
+     * Unlike the single put, existing entries are overwritten.
+     */
+    public void putDefaultTexts(Collection<TextContent> defaultLangTexts) {
+        putAllTranslations(toDefaultTextEntries(defaultLangTexts), false);
+    }
+
+    /**
+     * Like {@link #putDefaultTexts(Collection)}, but only the texts that differ from the cached ones are written.
+     * Unchanged entries stay untouched, so their near cache copies are not invalidated.
+     */
+    public void refreshDefaultTexts(Collection<TextContent> defaultLangTexts) {
+        putAllTranslations(toDefaultTextEntries(defaultLangTexts), true);
+    }
+
+    /**
+     * Bulk version of {@link #putTranslation(TranslatedText)}, meant for cache warmup.
+     * Unlike the single put, existing entries are overwritten.
+     */
+    public void putTranslatedTexts(Collection<TranslatedText> translatedTexts) {
+        putAllTranslations(toTranslatedTextEntries(translatedTexts), false);
+    }
+
+    /**
+     * Like {@link #putTranslatedTexts(Collection)}, but only the texts that differ from the cached ones are written.
+     */
+    public void refreshTranslatedTexts(Collection<TranslatedText> translatedTexts) {
+        putAllTranslations(toTranslatedTextEntries(translatedTexts), true);
+    }
+
+    private static Map<Long, String> toDefaultTextEntries(Collection<TextContent> defaultLangTexts) {
+        Map<Long, String> translations = new HashMap<>();
+        defaultLangTexts.forEach(text -> translations.put(TranslationKey.of(text.getId(), text.getLanguage()), text.getTextValue()));
+        return translations;
+    }
+
+    private static Map<Long, String> toTranslatedTextEntries(Collection<TranslatedText> translatedTexts) {
+        Map<Long, String> translations = new HashMap<>();
+        translatedTexts.forEach(text -> translations.put(TranslationKey.of(text.getId(), text.getLanguage()), text.getTextValue()));
+        return translations;
+    }
+
+    /**
+     * Writes the entries with asynchronous putAll calls and waits for all of them.
+     * Entries are ordered by partition before being cut into batches, so each batch touches as few partitions (and members) as possible.
+     * Batches are pipelined, so the total time depends on bandwidth and not on the number of round trips.
+     *
+     * @param onlyChanged if true, each batch is first compared with the cached values and only the differing entries are written
+     */
+    private void putAllTranslations(Map<Long, String> translations, boolean onlyChanged) {
+
+        if (translations.isEmpty()) {
+            return;
+        }
+
+        PartitionService partitionService = hazelcast.getPartitionService();
+
+        Map<Integer, List<Long>> keysByPartition = new TreeMap<>();
+        translations.keySet().forEach(key -> keysByPartition
+            .computeIfAbsent(partitionService.getPartition(key).getPartitionId(), partition -> new ArrayList<>())
+            .add(key));
+
+        List<Long> keys = new ArrayList<>(translations.size());
+        keysByPartition.values().forEach(keys::addAll);
+
+        Semaphore inFlight = new Semaphore(bulkMaxInFlight);
+        List<CompletableFuture<Void>> pendingBatches = new ArrayList<>();
+
+        for (int start = 0; start < keys.size(); start += bulkBatchSize) {
+
+            Map<Long, String> batch = new LinkedHashMap<>();
+            keys.subList(start, Math.min(start + bulkBatchSize, keys.size())).forEach(key -> batch.put(key, translations.get(key)));
+
+            if (onlyChanged) {
+                Map<Long, String> cached = defaultTexts.getAll(batch.keySet());
+                batch.entrySet().removeIf(entry -> entry.getValue().equals(cached.get(entry.getKey())));
+
+                if (batch.isEmpty()) {
+                    continue;
+                }
+            }
+
+            inFlight.acquireUninterruptibly();
+
+            pendingBatches.add(defaultTexts.putAllAsync(batch)
+                .toCompletableFuture()
+                .whenComplete((result, error) -> inFlight.release()));
+        }
+
+        CompletableFuture.allOf(pendingBatches.toArray(CompletableFuture[]::new)).join();
+    }
+
+    /**
+     * Dumps every translation in the cluster to a local snapshot file (see {@link TranslationSnapshot}).
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        TranslationSnapshot.write(file, new HashMap<>(defaultTexts));
+    }
+
+    /**
+     * Fills the cache from a local snapshot file, if there is a compatible one and the cluster has no translations yet.
+     * Returns the moment the snapshot was written, or empty if nothing was restored.
+     * <br>
+     * A member joining a running cluster does not restore anything: its snapshot may be older than the cluster values
+     * (texts replaced since), and writing it would roll them back.
+     */
+    public Optional<Instant> restoreSnapshot(Path file) throws IOException {
+
+        if (!defaultTexts.isEmpty()) {
+            LOGGER.info("The cluster already holds translations, the local snapshot is not restored");
+            return Optional.empty();
+        }
+
+        var snapshot = TranslationSnapshot.read(file);
+        if (snapshot.isEmpty()) {
+            return Optional.empty();
+        }
+
+        putAllTranslations(snapshot.get().translations(), false);
+
+        return Optional.of(Instant.ofEpochMilli(snapshot.get().createdAt()));
     }
 
     public void replaceTranslation(TextContent defaultLangText) {
-        defaultTexts.replace("%s_%s".formatted(defaultLangText.getId(), defaultLangText.getLanguage()), defaultLangText.getTextValue());
+        defaultTexts.replace(TranslationKey.of(defaultLangText.getId(), defaultLangText.getLanguage()), defaultLangText.getTextValue());
     }
 
     public void replaceTranslation(TranslatedText translatedText) {
-        defaultTexts.replace("%s_%s".formatted(translatedText.getId(), translatedText.getLanguage()), translatedText.getTextValue());
+        defaultTexts.replace(TranslationKey.of(translatedText.getId(), translatedText.getLanguage()), translatedText.getTextValue());
     }
 
     public String getTranslatedText(Long id) {
-        return defaultTexts.get("%s_%s".formatted(id, requestData.getSelectedLanguage()));
+        return defaultTexts.get(TranslationKey.of(id, requestData.getSelectedLanguage()));
     }
 
     public boolean containsText(Long id) {
-        return defaultTexts.containsKey("%s_%s".formatted(id, requestData.getSelectedLanguage()));
+        return defaultTexts.containsKey(TranslationKey.of(id, requestData.getSelectedLanguage()));
     }
 
     public boolean containsText(Long id, Language languague) {
-        return defaultTexts.containsKey("%s_%s".formatted(id, languague));
+        return defaultTexts.containsKey(TranslationKey.of(id, languague));
+    }
+
+    @Gauge(name = "translations.nearcache.hits", unit = MetricUnits.NONE, absolute = true, description = "Translations read from the near cache")
+    public long getNearCacheHits() {
+        NearCacheStats stats = getNearCacheStats();
+        return stats == null ? 0 : stats.getHits();
+    }
+
+    @Gauge(name = "translations.nearcache.misses", unit = MetricUnits.NONE, absolute = true, description = "Translations that had to be read from the cluster")
+    public long getNearCacheMisses() {
+        NearCacheStats stats = getNearCacheStats();
+        return stats == null ? 0 : stats.getMisses();
+    }
+
+    // Not NearCacheStats.getRatio(), that one is hits over misses (in percent) and is not a number before the first miss
+    @Gauge(name = "translations.nearcache.hitRatio", unit = MetricUnits.NONE, absolute = true, description = "Near cache hits over all the reads, from 0 to 1")
+    public double getNearCacheHitRatio() {
+
+        NearCacheStats stats = getNearCacheStats();
+        if (stats == null) {
+            return 0;
+        }
+
+        long hits = stats.getHits();
+        long reads = hits + stats.getMisses();
+
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+
+    @Gauge(name = "translations.nearcache.evictions", unit = MetricUnits.NONE, absolute = true, description = "Translations evicted from the near cache because it was full")
+    public long getNearCacheEvictions() {
+        NearCacheStats stats = getNearCacheStats();
+        return stats == null ? 0 : stats.getEvictions();
+    }
+
+    @Gauge(name = "translations.nearcache.size", unit = MetricUnits.NONE, absolute = true, description = "Translations held in the near cache")
+    public long getNearCacheSize() {
+        NearCacheStats stats = getNearCacheStats();
+        return stats == null ? 0 : stats.getOwnedEntryCount();
+    }
+
+    // Null when the near cache is disabled
+    private NearCacheStats getNearCacheStats() {
+        return defaultTexts.getLocalMapStats().getNearCacheStats();
     }
 
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import pt.cmg.aeminium.datamodel.common.entities.localisation.Language;
+
+/**
+ * Builds the keys of the translations map.
+ * A key is the text id and the language ordinal packed into a single long: the lower 8 bits hold the language
+ * and the remaining ones the text id. Hazelcast serialises it as a fixed 8 byte value and hashes it cheaply,
+ * which beats building, hashing and serialising a "id_language" String on every access.
+ * <br>
+ * Since the ordinal is used, every member of the cluster must run the same version of the Language enum.
+ *
+ * @author Carlos Gonçalves
+ */
+public final class TranslationKey {
+
+    private static final int LANGUAGE_BITS = 8;
+    private static final long LANGUAGE_MASK = (1L << LANGUAGE_BITS) - 1;
+
+    // values() clones the array on every call
+    private static final Language[] LANGUAGES = Language.values();
+
+    private TranslationKey() {
+    }
+
+    public static long of(long textId, Language language) {
+        return (textId << LANGUAGE_BITS) | language.ordinal();
+    }
+
+    public static long textId(long key) {
+        return key >>> LANGUAGE_BITS;
+    }
+
+    public static Language language(long key) {
+        return LANGUAGES[(int) (key & LANGUAGE_MASK)];
+    }
+
+}
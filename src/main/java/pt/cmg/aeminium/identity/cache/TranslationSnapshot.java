@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import pt.cmg.aeminium.datamodel.common.entities.localisation.Language;
+
+/**
+ * Reads and writes a local snapshot of the translations map, so a cold start can fill the cache without going to the database.
+ * <br>
+ * The file layout is: a header (magic, format version, Language fingerprint, creation time, entry count)
+ * followed by the entries, each one a {@link TranslationKey} long, the text length and the UTF-8 text.
+ * Since the keys carry Language ordinals, a snapshot written with a different Language enum is ignored.
+ *
+ * @author Carlos Gonçalves
+ */
+public final class TranslationSnapshot {
+
+    private static final int MAGIC = 0x41454D54; // "AEMT"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int LANGUAGES_FINGERPRINT = Arrays.hashCode(Arrays.stream(Language.values()).map(Enum::name).toArray());
+
+    private TranslationSnapshot() {
+    }
+
+    /**
+     * Contents of a snapshot file and the moment they were written.
+     */
+    public record Contents(long createdAt, Map<Long, String> translations) {
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first and then moves it over the previous one,
+     * so a crash halfway never leaves a broken snapshot behind.
+     */
+    public static void write(Path file, Map<Long, String> translations) throws IOException {
+
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 4 + Long.BYTES)
+                .putInt(MAGIC)
+                .putInt(FORMAT_VERSION)
+                .putInt(LANGUAGES_FINGERPRINT)
+                .putLong(System.currentTimeMillis())
+                .putInt(translations.size())
+                .flip();
+            writeFully(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+            for (var entry : translations.entrySet()) {
+
+                byte[] text = entry.getValue().getBytes(StandardCharsets.UTF_8);
+
+                if (buffer.remaining() < Long.BYTES + Integer.BYTES + text.length) {
+                    writeFully(channel, buffer.flip());
+                    buffer.clear();
+
+                    if (buffer.capacity() < Long.BYTES + Integer.BYTES + text.length) {
+                        buffer = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + text.length);
+                    }
+                }
+
+                buffer.putLong(entry.getKey()).putInt(text.length).put(text);
+            }
+
+            writeFully(channel, buffer.flip());
+        }
+
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the snapshot file into memory and reads it.
+     * Returns empty if there is no snapshot, if it was written by an incompatible version or if it is truncated.
+     */
+    public static Optional<Contents> read(Path file) throws IOException {
+
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < Integer.BYTES * 4 + Long.BYTES ||
+                buffer.getInt() != MAGIC ||
+                buffer.getInt() != FORMAT_VERSION ||
+                buffer.getInt() != LANGUAGES_FINGERPRINT) {
+                return Optional.empty();
+            }
+
+            long createdAt = buffer.getLong();
+            int size = buffer.getInt();
+
+            Map<Long, String> translations = HashMap.newHashMap(size);
+
+            for (int i = 0; i < size; i++) {
+                long key = buffer.getLong();
+                byte[] text = new byte[buffer.getInt()];
+                buffer.get(text);
+                translations.put(key, new String(text, StandardCharsets.UTF_8));
+            }
+
+            return Optional.of(new Contents(createdAt, translations));
+
+        } catch (BufferUnderflowException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.tasks.jwt.UserClaims;
+
+/**
+ * A per-node cache of user id -> token claims (upn, sub, groups), so a login mints its token without
+ * touching the lazy roles collection of the User or building new string lists.
+ * <br>
+ * There are only a handful of distinct role combinations, so the groups lists are interned: every user with the same roles
+ * shares one immutable list. Entries expire after a TTL, as a bound for changes that never reach this node, and are invalidated
+ * across the cluster whenever a user is changed
+ * (see {@link pt.cmg.aeminium.identity.communication.cdievents.EventPublisher#sendUserChangedEvent(Long)}).
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class UserClaimsCache {
+
+    @Inject
+    @ConfigProperty(name = "users.claimsCache.maxEntries", defaultValue = "10000")
+    private int maxEntries;
+
+    @Inject
+    @ConfigProperty(name = "users.claimsCache.ttlSeconds", defaultValue = "300")
+    private long ttlSeconds;
+
+    private final Map<Long, CachedClaims> claims = new ConcurrentHashMap<>();
+
+    private final Map<List<String>, List<String>> internedGroups = new ConcurrentHashMap<>();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private record CachedClaims(UserClaims claims, long expiresAt) {
+    }
+
+    /**
+     * Returns the claims of the user, computing them from the entity only if they are not cached yet.
+     */
+    public UserClaims getClaims(User user) {
+
+        long now = System.nanoTime();
+
+        CachedClaims cached = claims.get(user.getId());
+        if (cached != null && now - cached.expiresAt() < 0) {
+            hits.increment();
+            return cached.claims();
+        }
+
+        misses.increment();
+
+        long invalidationsBefore = invalidations.get();
+
+        UserClaims computed = UserClaims.of(user);
+        // List.copyOf in UserClaims keeps an immutable list as it is, so the interned instance is the one stored
+        UserClaims interned = new UserClaims(computed.userId(), computed.name(), internedGroups.computeIfAbsent(computed.groups(), groups -> groups));
+
+        if (claims.size() >= maxEntries && !claims.containsKey(user.getId())) {
+            makeRoom(now);
+        }
+
+        // An invalidation that happened while the claims were being built means they may already be stale, so they are not kept.
+        // The check and the store are one step under the lock of the entry, so an invalidation cannot slip in between them:
+        // it either comes before and is seen, or it waits and removes what was stored
+        CachedClaims toStore = new CachedClaims(interned, now + TimeUnit.SECONDS.toNanos(ttlSeconds));
+        claims.compute(user.getId(), (userId, current) -> invalidations.get() == invalidationsBefore ? toStore : current);
+
+        return interned;
+    }
+
+    public void invalidate(Long userId) {
+        invalidations.incrementAndGet();
+        claims.remove(userId);
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        claims.clear();
+    }
+
+    @Gauge(name = "users.claimsCache.hits", unit = MetricUnits.NONE, absolute = true, description = "Logins whose token claims came from memory")
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Gauge(name = "users.claimsCache.misses", unit = MetricUnits.NONE, absolute = true, description = "Logins whose token claims were built from the user entity")
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Gauge(name = "users.claimsCache.size", unit = MetricUnits.NONE, absolute = true, description = "Number of cached claim sets")
+    public long getSize() {
+        return claims.size();
+    }
+
+    /**
+     * Drops the expired entries and, if that is not enough, arbitrary ones until there is room for one more.
+     */
+    private void makeRoom(long now) {
+
+        claims.values().removeIf(cached -> now - cached.expiresAt() >= 0);
+
+        Iterator<Long> keys = claims.keySet().iterator();
+        while (claims.size() >= maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import pt.cmg.aeminium.datamodel.users.dao.identity.UserDAO;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+
+/**
+ * A per-node cache of user id -> user status, used on the hot path of every authenticated request.
+ * Entries expire after a TTL and are invalidated across the cluster whenever a user is changed
+ * (see {@link pt.cmg.aeminium.identity.communication.cdievents.EventPublisher#sendUserChangedEvent(Long)}).
+ * <br>
+ * Users that do not exist are never cached, those always go to the database.
+ * Only the statuses in "users.authenticatedStatuses" let a user use its tokens, see {@link #canAuthenticate(Long)}.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class UserStatusCache {
+
+    @Inject
+    @ConfigProperty(name = "users.cache.maxEntries", defaultValue = "10000")
+    private int maxEntries;
+
+    @Inject
+    @ConfigProperty(name = "users.cache.ttlSeconds", defaultValue = "60")
+    private long ttlSeconds;
+
+    @Inject
+    @ConfigProperty(name = "users.authenticatedStatuses", defaultValue = "ACTIVE,PENDING")
+    private Set<User.Status> authenticatedStatuses;
+
+    @Inject
+    private UserDAO userDAO;
+
+    private final Map<Long, CachedStatus> statuses = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private record CachedStatus(User.Status status, long expiresAt) {
+    }
+
+    /**
+     * Returns the status of the user, or empty if the user does not exist.
+     */
+    public Optional<User.Status> getStatus(Long userId) {
+
+        long now = System.nanoTime();
+
+        CachedStatus cached = statuses.get(userId);
+        if (cached != null && now - cached.expiresAt() < 0) {
+            hits.increment();
+            return Optional.of(cached.status());
+        }
+
+        misses.increment();
+
+        User user = userDAO.findById(userId);
+        if (user == null) {
+            statuses.remove(userId);
+            return Optional.empty();
+        }
+
+        put(userId, user.getStatus(), now);
+
+        return Optional.of(user.getStatus());
+    }
+
+    /**
+     * Whether the user exists and has one of the statuses allowed to authenticate.
+     * A user that is changed elsewhere is caught at most a TTL later, or right away when the change comes through this service.
+     */
+    public boolean canAuthenticate(Long userId) {
+        return getStatus(userId).filter(authenticatedStatuses::contains).isPresent();
+    }
+
+    public void invalidate(Long userId) {
+        statuses.remove(userId);
+    }
+
+    public void invalidateAll() {
+        statuses.clear();
+    }
+
+    @Gauge(name = "users.cache.hits", unit = MetricUnits.NONE, absolute = true, description = "User status lookups answered from memory")
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Gauge(name = "users.cache.misses", unit = MetricUnits.NONE, absolute = true, description = "User status lookups that went to the database")
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Gauge(name = "users.cache.size", unit = MetricUnits.NONE, absolute = true, description = "Number of cached user statuses")
+    public long getSize() {
+        return statuses.size();
+    }
+
+    private void put(Long userId, User.Status status, long now) {
+
+        if (statuses.size() >= maxEntries && !statuses.containsKey(userId)) {
+            makeRoom(now);
+        }
+
+        statuses.put(userId, new CachedStatus(status, now + TimeUnit.SECONDS.toNanos(ttlSeconds)));
+    }
+
+    /**
+     * Drops the expired entries and, if that is not enough, an arbitrary one.
+     * This is not LRU, but it keeps the map bounded without any locking.
+     */
+    private void makeRoom(long now) {
+
+        statuses.values().removeIf(cached -> now - cached.expiresAt() >= 0);
+
+        Iterator<Long> keys = statuses.keySet().iterator();
+        while (statuses.size() >= maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import pt.cmg.aeminium.identity.tasks.jwt.JWTokenVerifier;
+import pt.cmg.aeminium.identity.tasks.jwt.TokenHashes;
+import pt.cmg.aeminium.identity.tasks.jwt.VerifiedToken;
+
+/**
+ * A per-node cache of the bearer tokens that were already verified, so a client reusing its token
+ * (they are valid for days) only pays for the public key verification once per node.
+ * <br>
+ * Entries are keyed by the SHA-256 of the token, never by the token itself, and live until the token expires or is revoked (see {@link RevokedTokens}).
+ * Tokens that fail verification are never cached. A cached token only says the token is genuine: whether its user may still use it
+ * is checked on every request against {@link UserStatusCache}, so there is nothing to drop here when a user changes.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class VerifiedTokenCache {
+
+    @Inject
+    @ConfigProperty(name = "jwt.cache.maxEntries", defaultValue = "10000")
+    private int maxEntries;
+
+    @Inject
+    private JWTokenVerifier tokenVerifier;
+
+    private final Map<String, VerifiedToken> tokens = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder verificationNanos = new LongAdder();
+
+    /**
+     * Returns the verified token, from memory if it was seen before, or empty if it is not valid.
+     */
+    public Optional<VerifiedToken> verify(String rawToken) {
+
+        String key = TokenHashes.sha256(rawToken);
+        long nowSeconds = System.currentTimeMillis() / 1000;
+
+        VerifiedToken cached = tokens.get(key);
+        if (cached != null) {
+            if (nowSeconds < cached.getExpirationTime()) {
+                hits.increment();
+                return Optional.of(cached);
+            }
+            tokens.remove(key, cached);
+        }
+
+        misses.increment();
+
+        long start = System.nanoTime();
+        Optional<VerifiedToken> verified = tokenVerifier.verify(rawToken);
+        verificationNanos.add(System.nanoTime() - start);
+
+        // A token accepted only thanks to the clock skew is not worth keeping
+        verified.filter(token -> nowSeconds < token.getExpirationTime()).ifPresent(token -> put(key, token, nowSeconds));
+
+        return verified;
+    }
+
+    /**
+     * Forgets a single token, so its next use is verified again.
+     */
+    public void invalidateToken(String rawToken) {
+        tokens.remove(TokenHashes.sha256(rawToken));
+    }
+
+    /**
+     * Forgets a token by its jti, which is all a revocation coming from another member carries.
+     */
+    public void invalidateTokenId(String tokenId) {
+        tokens.values().removeIf(token -> tokenId.equals(token.getTokenID()));
+    }
+
+    public void invalidateAll() {
+        tokens.clear();
+    }
+
+    @Gauge(name = "jwt.cache.hits", unit = MetricUnits.NONE, absolute = true, description = "Bearer tokens accepted without verifying the signature again")
+    public long getHits() {
+        return hits.sum();
+    }
+
+    @Gauge(name = "jwt.cache.misses", unit = MetricUnits.NONE, absolute = true, description = "Bearer tokens that had to be verified")
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Gauge(name = "jwt.cache.size", unit = MetricUnits.NONE, absolute = true, description = "Number of cached verified tokens")
+    public long getSize() {
+        return tokens.size();
+    }
+
+    @Gauge(name = "jwt.verification.time", unit = MetricUnits.NANOSECONDS, absolute = true, description = "Total time spent verifying bearer tokens")
+    public long getVerificationTime() {
+        return verificationNanos.sum();
+    }
+
+    @Gauge(name = "jwt.verification.savedTime", unit = MetricUnits.NANOSECONDS, absolute = true, description = "Estimated verification time saved by the cache (hits times the average verification time)")
+    public long getSavedVerificationTime() {
+        long verifications = misses.sum();
+        return verifications == 0 ? 0 : hits.sum() * (verificationNanos.sum() / verifications);
+    }
+
+    private void put(String key, VerifiedToken token, long nowSeconds) {
+
+        if (tokens.size() >= maxEntries && !tokens.containsKey(key)) {
+            makeRoom(nowSeconds);
+        }
+
+        tokens.put(key, token);
+    }
+
+    /**
+     * Same as in UserStatusCache: drops the expired entries and, if that is not enough, arbitrary ones.
+     */
+    private void makeRoom(long nowSeconds) {
+
+        tokens.values().removeIf(token -> nowSeconds >= token.getExpirationTime());
+
+        Iterator<String> keys = tokens.keySet().iterator();
+        while (tokens.size() >= maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+}
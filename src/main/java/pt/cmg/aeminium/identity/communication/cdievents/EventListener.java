@@ -8,6 +8,10 @@ import java.util.logging.Logger;
 import fish.payara.micro.cdi.Inbound;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import pt.cmg.aeminium.identity.cache.RevokedTokens;
+import pt.cmg.aeminium.identity.cache.UserClaimsCache;
+import pt.cmg.aeminium.identity.cache.UserStatusCache;
 
 /**
  * @author Carlos Gonçalves
@@ -17,8 +21,26 @@ public class EventListener {
 
     private static final Logger LOGGER = Logger.getLogger(EventListener.class.getName());
 
+    @Inject
+    private UserStatusCache userStatusCache;
+
+    @Inject
+    private UserClaimsCache userClaimsCache;
+
+    @Inject
+    private RevokedTokens revokedTokens;
+
     public void listenToPing(@Observes @Inbound(eventName = "PING") String message) {
         LOGGER.info(message);
     }
 
+    public void listenToUserChanged(@Observes @Inbound(eventName = EventPublisher.USER_CHANGED) Long userId) {
+        userStatusCache.invalidate(userId);
+        userClaimsCache.invalidate(userId);
+    }
+
+    public void listenToTokenRevoked(@Observes @Inbound(eventName = EventPublisher.TOKEN_REVOKED) String tokenId) {
+        revokedTokens.onRevoked(tokenId);
+    }
+
 }
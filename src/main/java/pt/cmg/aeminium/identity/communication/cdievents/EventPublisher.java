@@ -15,12 +15,37 @@ import jakarta.inject.Inject;
 @ApplicationScoped
 public class EventPublisher {
 
+    public static final String USER_CHANGED = "USER_CHANGED";
+    public static final String TOKEN_REVOKED = "TOKEN_REVOKED";
+
     @Inject
     @Outbound(eventName = "PING")
     private Event<String> event;
 
+    @Inject
+    @Outbound(eventName = USER_CHANGED)
+    private Event<Long> userChangedEvent;
+
+    @Inject
+    @Outbound(eventName = TOKEN_REVOKED)
+    private Event<String> tokenRevokedEvent;
+
     public void sendPingEvent() {
         event.fire("pong");
     }
 
+    /**
+     * Tells the other cluster members that a user was changed, so they drop whatever they cached about it.
+     */
+    public void sendUserChangedEvent(Long userId) {
+        userChangedEvent.fire(userId);
+    }
+
+    /**
+     * Tells the other cluster members that a token (by jti) was revoked
+     */
+    public void sendTokenRevokedEvent(String tokenId) {
+        tokenRevokedEvent.fire(tokenId);
+    }
+
 }
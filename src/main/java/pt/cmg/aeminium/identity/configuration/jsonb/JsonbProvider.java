@@ -29,19 +29,16 @@ import pt.cmg.jakartautils.jsonb.serialisers.PairSerialiser;
 @Produces(MediaType.APPLICATION_JSON)
 public class JsonbProvider implements ContextResolver<Jsonb> {
 
-    private static Jsonb INSTANCE;
-    private static Jsonb IGNORE_CASE_INSTANCE;
+    // Jsonb instances are thread safe and expensive to build, so there is one per configuration variant, built when the class loads
+    private static final Jsonb INSTANCE = createJsonb(false);
+    private static final Jsonb IGNORE_CASE_INSTANCE = createJsonb(true);
 
     @Override
     public Jsonb getContext(Class<?> type) {
-
-        return JsonbBuilder.newBuilder()
-            .withConfig(createConfiguration())
-            .build();
-
+        return INSTANCE;
     }
 
-    private static JsonbConfig createConfiguration() {
+    public static JsonbConfig createConfiguration() {
         return new JsonbConfig()
             .withDateFormat(JsonbDateFormat.TIME_IN_MILLIS, Locale.getDefault())
             .withDeserializers(new MillisToLocalDateTimeDeserialiser(), new MillisToDateDeserialiser(), new StringToLanguageDeserialiser())
@@ -51,32 +48,20 @@ public class JsonbProvider implements ContextResolver<Jsonb> {
 
     public static Jsonb getJsonB() {
         return getJsonB(false);
-
     }
 
     public static Jsonb getJsonB(boolean ignoreCase) {
-        if (ignoreCase) {
-            if (IGNORE_CASE_INSTANCE == null) {
-                init(true);
-            }
-            return IGNORE_CASE_INSTANCE;
-        } else {
-            if (INSTANCE == null) {
-                init(false);
-            }
-            return INSTANCE;
-        }
+        return ignoreCase ? IGNORE_CASE_INSTANCE : INSTANCE;
     }
 
-    private static void init(boolean ignoreCase) {
+    private static Jsonb createJsonb(boolean ignoreCase) {
         JsonbConfig configuration = createConfiguration();
 
         if (ignoreCase) {
             configuration.withPropertyNamingStrategy(PropertyNamingStrategy.CASE_INSENSITIVE);
-            IGNORE_CASE_INSTANCE = JsonbBuilder.newBuilder().withConfig(configuration).build();
-        } else {
-            INSTANCE = JsonbBuilder.newBuilder().withConfig(configuration).build();
         }
+
+        return JsonbBuilder.newBuilder().withConfig(configuration).build();
     }
 
 }
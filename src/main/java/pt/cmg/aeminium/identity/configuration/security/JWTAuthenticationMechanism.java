@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.configuration.security;
+
+import java.util.Optional;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.security.enterprise.AuthenticationStatus;
+import jakarta.security.enterprise.authentication.mechanism.http.HttpAuthenticationMechanism;
+import jakarta.security.enterprise.authentication.mechanism.http.HttpMessageContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.ws.rs.core.HttpHeaders;
+import pt.cmg.aeminium.identity.cache.RevokedTokens;
+import pt.cmg.aeminium.identity.cache.UserStatusCache;
+import pt.cmg.aeminium.identity.cache.VerifiedTokenCache;
+import pt.cmg.aeminium.identity.tasks.jwt.VerifiedToken;
+
+/**
+ * Authenticates "Authorization: Bearer" requests with the tokens minted by this service.
+ * <br>
+ * This replaces the MicroProfile JWT runtime mechanism (there is no @LoginConfig anymore), because that one verifies
+ * the signature on every single request and has no way to plug a cache in. Tokens are verified through {@link VerifiedTokenCache}
+ * and checked against {@link RevokedTokens} and the status of their user ({@link UserStatusCache}). The caller principal is still a JsonWebToken
+ * and its groups are the caller groups, which WEB-INF/payara-web.xml maps to the roles {@link RolesAllowedFeature} checks.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class JWTAuthenticationMechanism implements HttpAuthenticationMechanism {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    @Inject
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Inject
+    private RevokedTokens revokedTokens;
+
+    @Inject
+    private UserStatusCache userStatusCache;
+
+    @Override
+    public AuthenticationStatus validateRequest(HttpServletRequest request, HttpServletResponse response, HttpMessageContext httpMessageContext) {
+
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+
+        // No token: the request goes on anonymously and it is up to the endpoint to allow it or not. Basic is used by the login.
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER_PREFIX, 0, BEARER_PREFIX.length())) {
+            return httpMessageContext.doNothing();
+        }
+
+        Optional<VerifiedToken> token = verifiedTokenCache.verify(authorization.substring(BEARER_PREFIX.length()).trim());
+
+        if (token.isEmpty() || revokedTokens.isRevoked(token.get().getTokenID())) {
+            return httpMessageContext.responseUnauthorized();
+        }
+
+        // The token outlives any change to its user, so a user that was disabled since it was minted is turned away here
+        if (!canAuthenticate(token.get().getSubject())) {
+            return httpMessageContext.responseUnauthorized();
+        }
+
+        return httpMessageContext.notifyContainerAboutLogin(token.get(), token.get().getGroups());
+    }
+
+    private boolean canAuthenticate(String subject) {
+        try {
+            return subject != null && userStatusCache.canAuthenticate(Long.valueOf(subject));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+}
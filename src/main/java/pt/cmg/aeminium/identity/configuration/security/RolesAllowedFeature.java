@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.configuration.security;
+
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
+import java.util.Set;
+import jakarta.annotation.security.DenyAll;
+import jakarta.annotation.security.PermitAll;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.ws.rs.container.DynamicFeature;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+
+/**
+ * Enforces @RolesAllowed, @PermitAll and @DenyAll on the JAX-RS resources, which are CDI beans and not EJBs, so nothing else would.
+ * The MicroProfile JWT runtime used to do it, it went away with @LoginConfig (see {@link JWTAuthenticationMechanism}).
+ * <br>
+ * The annotations of the method win over the ones of the class, as in the Jakarta Annotations specification.
+ * Roles are checked with the JAX-RS SecurityContext, so they are the token groups as mapped by WEB-INF/payara-web.xml.
+ *
+ * @author Carlos Gonçalves
+ */
+public class RolesAllowedFeature implements DynamicFeature {
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+
+        Method method = resourceInfo.getResourceMethod();
+
+        if (!register(method, context)) {
+            register(resourceInfo.getResourceClass(), context);
+        }
+    }
+
+    /**
+     * Registers the filter for the security annotation of the element, if it has one, and tells whether it had
+     */
+    private static boolean register(AnnotatedElement element, FeatureContext context) {
+
+        if (element.isAnnotationPresent(DenyAll.class)) {
+            context.register(new RolesAllowedRequestFilter(Set.of()));
+            return true;
+        }
+
+        if (element.isAnnotationPresent(PermitAll.class)) {
+            return true;
+        }
+
+        RolesAllowed rolesAllowed = element.getAnnotation(RolesAllowed.class);
+        if (rolesAllowed != null) {
+            context.register(new RolesAllowedRequestFilter(Set.of(rolesAllowed.value())));
+            return true;
+        }
+
+        return false;
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.configuration.security;
+
+import java.util.Set;
+import jakarta.annotation.Priority;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.SecurityContext;
+
+/**
+ * Lets the request through only if the caller has one of the roles: 401 for anonymous callers and 403 for callers without any of them.
+ * No roles at all means nobody is allowed (@DenyAll). Registered per resource method by {@link RolesAllowedFeature}.
+ *
+ * @author Carlos Gonçalves
+ */
+@Priority(Priorities.AUTHORIZATION)
+class RolesAllowedRequestFilter implements ContainerRequestFilter {
+
+    private static final String BEARER_CHALLENGE = "Bearer";
+
+    private final Set<String> rolesAllowed;
+
+    RolesAllowedRequestFilter(Set<String> rolesAllowed) {
+        this.rolesAllowed = rolesAllowed;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+
+        SecurityContext securityContext = requestContext.getSecurityContext();
+
+        if (rolesAllowed.isEmpty()) {
+            requestContext.abortWith(Response.status(Status.FORBIDDEN).build());
+            return;
+        }
+
+        if (securityContext.getUserPrincipal() == null) {
+            requestContext.abortWith(Response.status(Status.UNAUTHORIZED).header(HttpHeaders.WWW_AUTHENTICATE, BEARER_CHALLENGE).build());
+            return;
+        }
+
+        for (String role : rolesAllowed) {
+            if (securityContext.isUserInRole(role)) {
+                return;
+            }
+        }
+
+        requestContext.abortWith(Response.status(Status.FORBIDDEN).build());
+    }
+
+}
@@ -9,6 +9,7 @@ import org.eclipse.microprofile.health.HealthCheckResponse;
 import org.eclipse.microprofile.health.Readiness;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import pt.cmg.aeminium.identity.cache.CacheWarmupProgress;
 import pt.cmg.aeminium.identity.cache.ObjectCacheLoader;
 
 /**
@@ -23,10 +24,16 @@ public class ReadinessCheck implements HealthCheck {
 
     @Override
     public HealthCheckResponse call() {
-        if (objectCache.isCacheReady()) {
-            return HealthCheckResponse.up("identity");
-        }
-        return HealthCheckResponse.down("identity");
+
+        CacheWarmupProgress progress = objectCache.getWarmupProgress();
+
+        return HealthCheckResponse.named("identity")
+            .status(objectCache.isCacheReady())
+            .withData("cacheWarmup", progress.getStage().name())
+            .withData("loadedCountries", progress.getCountries())
+            .withData("loadedDefaultTexts", progress.getDefaultTexts())
+            .withData("loadedTranslatedTexts", progress.getTranslatedTexts())
+            .build();
     }
 
 }
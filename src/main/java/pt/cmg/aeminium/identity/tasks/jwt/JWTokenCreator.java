@@ -8,43 +8,109 @@ import static java.lang.Thread.currentThread;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.Base64;
-import java.util.Date;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import io.jsonwebtoken.Jwts;
 import jakarta.annotation.PostConstruct;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
 import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
 import jakarta.inject.Inject;
-import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.jakartautils.text.TextFormatter;
 
 /**
+ * Created when the application starts: a private key that cannot be read, or that is not the pair of the primary public key
+ * (see {@link PublicKeys}), fails the deployment instead of minting tokens nobody can verify.
+ *
  * @author Carlos Gonçalves
  */
 @Singleton
+@Startup
+@Lock(LockType.READ)
 public class JWTokenCreator {
 
+    private static final Logger LOGGER = Logger.getLogger(JWTokenCreator.class.getName());
+
+    public static final String ISSUER = "aeminium-identity";
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    // The claim that is the same for every token, already serialised
+    private static final String STATIC_CLAIMS = ",\"iss\":\"" + ISSUER + "\"";
+
     @Inject
     @ConfigProperty(name = "jwt.privatekey.location", defaultValue = "/META-INF/aeminium_pkey.pem")
     private String privateKeyLocation;
 
+    // Access tokens are short lived, clients get a new one with their refresh token (see RefreshTokens)
+    @Inject
+    @ConfigProperty(name = "jwt.accessToken.validityMinutes", defaultValue = "15")
+    private long tokenValidityMinutes;
+
+    // The key tokens are signed with is named (kid) and checked against its public pair, and the algorithm is the one it is verified with
+    @Inject
+    private PublicKeys publicKeys;
+
+    private SigningAlgorithm signingAlgorithm;
+
     private String privateKeyBase64;
 
     private PrivateKey privateKey;
 
+    // "{typ,kid,alg}." already Base64URL encoded, it never changes for a given key
+    private String encodedHeader;
+
     @PostConstruct
     public void loadPrivateKey() {
+        signingAlgorithm = publicKeys.getSigningAlgorithm();
         privateKeyBase64 = readKeyFile();
-        privateKey = generatePrivateKey(privateKeyBase64);
+        privateKey = privateKeyBase64 == null ? null : generatePrivateKey(privateKeyBase64);
+
+        if (privateKey == null) {
+            throw new IllegalStateException(TextFormatter.formatMessage("The {0} private key could not be loaded from {1}, no token could ever be signed", signingAlgorithm.getKeyType(), privateKeyLocation));
+        }
+
+        checkKeyPair();
+
+        String keyId = publicKeys.getPrimaryKeyId();
+        String header = "{\"typ\":\"JWT\"" + (keyId == null ? "" : ",\"kid\":\"" + keyId + "\"") + ",\"alg\":\"" + signingAlgorithm.name() + "\"}";
+        encodedHeader = BASE64_URL.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + '.';
+    }
+
+    /**
+     * Signs a probe and verifies it with the primary public key, the same way every token will be
+     */
+    private void checkKeyPair() {
+        try {
+            byte[] probe = ISSUER.getBytes(StandardCharsets.US_ASCII);
+
+            Signature verifier = Signature.getInstance(signingAlgorithm.getJcaName());
+            verifier.initVerify(publicKeys.getPrimaryKey());
+            verifier.update(probe);
+
+            if (!verifier.verify(sign(ISSUER))) {
+                throw new IllegalStateException(TextFormatter.formatMessage("The private key at {0} is not the pair of the primary public key, no token it signs could be verified", privateKeyLocation));
+            }
+        } catch (NoSuchAlgorithmException | InvalidKeyException | SignatureException e) {
+            throw new IllegalStateException(TextFormatter.formatMessage("Could not check the private key at {0} against the primary public key", privateKeyLocation), e);
+        }
     }
 
     public String readKeyFile() {
@@ -85,37 +151,100 @@ public class JWTokenCreator {
 
         PrivateKey privateKey = null;
         try {
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            KeyFactory keyFactory = KeyFactory.getInstance(signingAlgorithm.getKeyType());
 
             PKCS8EncodedKeySpec keySpec = new PKCS8EncodedKeySpec(decodedKey);
 
             privateKey = keyFactory.generatePrivate(keySpec);
 
         } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
-
+            LOGGER.log(Level.SEVERE, TextFormatter.formatMessage("The private key is not a valid {0} key", signingAlgorithm.getKeyType()), e);
         }
 
         return privateKey;
     }
 
-    public String generateNewToken(User user) {
+    public String generateNewToken(UserClaims user) {
+        return generateNewToken(user, Instant.now(), newTokenId());
+    }
 
-        Date now = new Date();
-        Date threeDaysFromNow = Date.from(Instant.now().plus(3, ChronoUnit.DAYS));
+    public Duration getTokenValidity() {
+        return Duration.ofMinutes(tokenValidityMinutes);
+    }
+
+    /**
+     * Every token gets its own jti, which is what a revocation refers to (see RevokedTokens)
+     */
+    public static String newTokenId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Mints a token that is byte for byte the same the jjwt builder would produce
+     * (header: typ, kid, alg; claims: upn, sub, iss, jti, iat, exp, groups; empty claims are left out).
+     * The encoded header and the constant claims are built once, only the per token claims are serialised on each call.
+     */
+    public String generateNewToken(UserClaims user, Instant now, String tokenId) {
+
+        StringBuilder claims = new StringBuilder(256).append('{');
+
+        if (user.name() != null && !user.name().isEmpty()) {
+            claims.append("\"upn\":");
+            JsonStrings.appendQuoted(claims, user.name());
+            claims.append(',');
+        }
+
+        claims.append("\"sub\":");
+        JsonStrings.appendQuoted(claims, user.userId().toString());
+
+        claims.append(STATIC_CLAIMS).append(",\"jti\":");
+        JsonStrings.appendQuoted(claims, tokenId);
+
+        claims.append(",\"iat\":").append(now.getEpochSecond())
+            .append(",\"exp\":").append(now.plusSeconds(tokenValidityMinutes * 60).getEpochSecond());
+
+        if (!user.groups().isEmpty()) {
+            claims.append(",\"groups\":[");
+            boolean first = true;
+            for (String group : user.groups()) {
+                if (!first) {
+                    claims.append(',');
+                }
+                JsonStrings.appendQuoted(claims, group);
+                first = false;
+            }
+            claims.append(']');
+        }
+
+        claims.append('}');
 
-        String jws = Jwts.builder()
-            .header().type("JWT").and()
-            .claim("upn", user.getName())
-            .subject(user.getId().toString())
-            .issuer("aeminium-identity")
-            .claim("jti", "x-atm-092")
-            .issuedAt(now)
-            .expiration(threeDaysFromNow)
-            .claim("groups", user.getRolesAsStrings())
-            .signWith(privateKey)
-            .compact();
+        String signingInput = encodedHeader + BASE64_URL.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
 
-        return jws;
+        return signingInput + '.' + BASE64_URL.encodeToString(sign(signingInput));
+    }
+
+    /**
+     * A Signature is not thread safe, so each token gets a new one. Creating it is cheap next to the signing itself,
+     * and nothing is left behind on the container threads.
+     */
+    private byte[] sign(String signingInput) {
+        try {
+            Signature signature = createSigner();
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signature.sign();
+        } catch (SignatureException e) {
+            throw new IllegalStateException("Could not sign token", e);
+        }
+    }
+
+    private Signature createSigner() {
+        try {
+            Signature signature = Signature.getInstance(signingAlgorithm.getJcaName());
+            signature.initSign(privateKey);
+            return signature;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(TextFormatter.formatMessage("Could not create a {0} signer", signingAlgorithm), e);
+        }
     }
 
 }
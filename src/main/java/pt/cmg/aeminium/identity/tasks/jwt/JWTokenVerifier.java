@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.jwt;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.jwt.Claims;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonException;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonReader;
+import pt.cmg.jakartautils.text.TextFormatter;
+
+/**
+ * Verifies the bearer tokens minted by {@link JWTokenCreator}: the signature with the public key, the algorithm, the issuer and the expiry.
+ * It reads the same "mp.jwt.verify.*" properties the MicroProfile JWT runtime would, and the keys (and their algorithm) are picked by kid from {@link PublicKeys}.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class JWTokenVerifier {
+
+    private static final Logger LOGGER = Logger.getLogger(JWTokenVerifier.class.getName());
+
+    @Inject
+    @ConfigProperty(name = "mp.jwt.verify.issuer", defaultValue = JWTokenCreator.ISSUER)
+    private String issuer;
+
+    @Inject
+    @ConfigProperty(name = "mp.jwt.verify.clock.skew", defaultValue = "60")
+    private long clockSkewSeconds;
+
+    @Inject
+    private PublicKeys publicKeys;
+
+    /**
+     * Returns the verified token, or empty if the token is malformed, was not signed with our key, was issued by someone else or has expired.
+     */
+    public Optional<VerifiedToken> verify(String rawToken) {
+
+        int headerEnd = rawToken.indexOf('.');
+        int claimsEnd = rawToken.indexOf('.', headerEnd + 1);
+
+        if (headerEnd < 0 || claimsEnd < 0 || rawToken.indexOf('.', claimsEnd + 1) >= 0) {
+            return Optional.empty();
+        }
+
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+
+            // The alg must be checked before anything else, otherwise a token could pick a weaker one (or "none")
+            JsonObject header = readJson(decoder.decode(rawToken.substring(0, headerEnd)));
+            if (!publicKeys.getSigningAlgorithm().name().equals(header.getString("alg", null))) {
+                LOGGER.fine(() -> TextFormatter.formatMessage("Token rejected, unexpected algorithm {0}", header.get("alg")));
+                return Optional.empty();
+            }
+
+            // Tokens minted before keys had ids have no kid, those were signed with the primary key
+            String keyId = header.getString("kid", publicKeys.getPrimaryKeyId());
+            Optional<PublicKey> key = publicKeys.getKey(keyId);
+            if (key.isEmpty()) {
+                LOGGER.fine(() -> TextFormatter.formatMessage("Token rejected, unknown key {0}", keyId));
+                return Optional.empty();
+            }
+
+            byte[] signingInput = rawToken.substring(0, claimsEnd).getBytes(StandardCharsets.US_ASCII);
+            if (!isValidSignature(key.get(), signingInput, decoder.decode(rawToken.substring(claimsEnd + 1)))) {
+                LOGGER.fine("Token rejected, invalid signature");
+                return Optional.empty();
+            }
+
+            JsonObject claims = readJson(decoder.decode(rawToken.substring(headerEnd + 1, claimsEnd)));
+
+            if (!issuer.equals(claims.getString(Claims.iss.name(), null))) {
+                LOGGER.fine(() -> TextFormatter.formatMessage("Token rejected, unexpected issuer {0}", claims.get(Claims.iss.name())));
+                return Optional.empty();
+            }
+
+            long now = System.currentTimeMillis() / 1000;
+            if (!claims.containsKey(Claims.exp.name()) || claims.getJsonNumber(Claims.exp.name()).longValue() + clockSkewSeconds <= now) {
+                LOGGER.fine("Token rejected, it has expired");
+                return Optional.empty();
+            }
+
+            return Optional.of(new VerifiedToken(rawToken, claims));
+
+        } catch (IllegalArgumentException | JsonException | ClassCastException e) {
+            LOGGER.log(Level.FINE, "Token rejected, it is malformed", e);
+            return Optional.empty();
+        } catch (IllegalStateException e) {
+            // No usable verifier for the key (see createVerifier): the token cannot be trusted, so it is a 401 and not a 500
+            LOGGER.log(Level.SEVERE, "Token rejected, it could not be verified", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Same as in JWTokenCreator: a Signature is not thread safe, so each verification gets a new one.
+     * Creating it is cheap next to the verification itself, and the cache spares most requests from both.
+     */
+    private boolean isValidSignature(PublicKey publicKey, byte[] signingInput, byte[] signature) {
+        try {
+            Signature signatureVerifier = createVerifier(publicKey);
+            signatureVerifier.update(signingInput);
+            return signatureVerifier.verify(signature);
+        } catch (SignatureException e) {
+            return false;
+        }
+    }
+
+    private Signature createVerifier(PublicKey publicKey) {
+        try {
+            Signature signature = Signature.getInstance(publicKeys.getSigningAlgorithm().getJcaName());
+            signature.initVerify(publicKey);
+            return signature;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(TextFormatter.formatMessage("Could not create a {0} verifier", publicKeys.getSigningAlgorithm()), e);
+        }
+    }
+
+    private static JsonObject readJson(byte[] json) {
+        try (JsonReader reader = Json.createReader(new ByteArrayInputStream(json))) {
+            return reader.readObject();
+        }
+    }
+
+}
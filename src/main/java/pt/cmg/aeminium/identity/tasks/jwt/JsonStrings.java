@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.jwt;
+
+/**
+ * Writes JSON string literals the same way Jackson does (the serialiser jjwt used), so hand built tokens match jjwt ones byte for byte:
+ * quotes, backslashes and control characters are escaped, everything else is written as is.
+ *
+ * @author Carlos Gonçalves
+ */
+final class JsonStrings {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private JsonStrings() {
+    }
+
+    static void appendQuoted(StringBuilder json, String value) {
+
+        json.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                case '\b' -> json.append("\\b");
+                case '\f' -> json.append("\\f");
+                default -> {
+                    if (c < 0x20) {
+                        json.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+
+        json.append('"');
+    }
+
+}
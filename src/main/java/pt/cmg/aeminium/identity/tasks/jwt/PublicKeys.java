@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.jwt;
+
+import static java.lang.Thread.currentThread;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import pt.cmg.jakartautils.text.TextFormatter;
+
+/**
+ * The public keys tokens are verified with, each one identified by its JWK thumbprint (RFC 7638), which is used as the "kid".
+ * <br>
+ * The primary key is the pair of the key tokens are signed with ("mp.jwt.verify.publickey.location").
+ * For a key rotation, the keys of "jwt.verify.additionalPublicKeys" are accepted and published as well: publish the new key there first,
+ * then swap it with the primary one once every verifier has fetched it, and keep the old one there until the tokens signed with it expire.
+ * <br>
+ * The JWK Set document is built once, so it is served as is.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class PublicKeys {
+
+    private static final Logger LOGGER = Logger.getLogger(PublicKeys.class.getName());
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    // Ed25519 public keys are the last 32 bytes of their X.509 encoding
+    private static final int ED25519_KEY_LENGTH = 32;
+
+    // P-256 coordinates are always 32 bytes long
+    private static final int P256_COORDINATE_LENGTH = 32;
+
+    @Inject
+    @ConfigProperty(name = "mp.jwt.verify.publickey.location", defaultValue = "/META-INF/aeminium_pubkey.pem")
+    private String primaryKeyLocation;
+
+    @Inject
+    @ConfigProperty(name = "jwt.verify.additionalPublicKeys")
+    private Optional<List<String>> additionalKeyLocations;
+
+    @Inject
+    @ConfigProperty(name = "mp.jwt.verify.publickey.algorithm", defaultValue = "RS256")
+    private SigningAlgorithm signingAlgorithm;
+
+    private String primaryKeyId;
+
+    // kid -> key, primary first
+    private final Map<String, PublicKey> keys = new LinkedHashMap<>();
+
+    private byte[] jwks;
+
+    @PostConstruct
+    public void loadKeys() {
+
+        primaryKeyId = loadKey(primaryKeyLocation);
+        if (primaryKeyId == null) {
+            throw new IllegalStateException(TextFormatter.formatMessage("The primary public key could not be loaded from {0}, no token could ever be verified", primaryKeyLocation));
+        }
+
+        additionalKeyLocations.orElse(List.of()).forEach(this::loadKey);
+
+        JsonArrayBuilder jwkArray = Json.createArrayBuilder();
+        keys.forEach((keyId, key) -> jwkArray.add(Json.createObjectBuilder(toJwk(key))
+            .add("kid", keyId)
+            .add("use", "sig")
+            .add("alg", signingAlgorithm.name())));
+
+        jwks = Json.createObjectBuilder().add("keys", jwkArray).build().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Loads the keys when the application starts, so a missing or broken primary key fails the deployment instead of every authenticated request
+     */
+    public void loadOnStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        // Observing the event is enough for the container to create the bean
+    }
+
+    /**
+     * The algorithm tokens are both signed and verified with ("mp.jwt.verify.publickey.algorithm"), the type of every key here
+     */
+    public SigningAlgorithm getSigningAlgorithm() {
+        return signingAlgorithm;
+    }
+
+    /**
+     * The kid of the key tokens are currently signed with
+     */
+    public String getPrimaryKeyId() {
+        return primaryKeyId;
+    }
+
+    public PublicKey getPrimaryKey() {
+        return keys.get(primaryKeyId);
+    }
+
+    /**
+     * The key with that kid, if it is one of ours
+     */
+    public Optional<PublicKey> getKey(String keyId) {
+        return Optional.ofNullable(keys.get(keyId));
+    }
+
+    /**
+     * The JWK Set document (RFC 7517) with every key, already serialised. Callers must not change the array.
+     */
+    public byte[] getJwks() {
+        return jwks;
+    }
+
+    private String loadKey(String location) {
+        try {
+            PublicKey key = KeyFactory.getInstance(signingAlgorithm.getKeyType()).generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(readKeyFile(location))));
+            String keyId = thumbprint(key);
+            keys.put(keyId, key);
+            return keyId;
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, TextFormatter.formatMessage("Could not load the {0} public key from {1}", signingAlgorithm.getKeyType(), location), e);
+            return null;
+        }
+    }
+
+    /**
+     * Only the required members, the ones the thumbprint is computed from
+     */
+    private static JsonObject toJwk(PublicKey key) {
+
+        JsonObjectBuilder jwk = Json.createObjectBuilder();
+
+        if (key instanceof RSAPublicKey rsaKey) {
+            jwk.add("kty", "RSA")
+                .add("n", BASE64_URL.encodeToString(unsigned(rsaKey.getModulus(), 0)))
+                .add("e", BASE64_URL.encodeToString(unsigned(rsaKey.getPublicExponent(), 0)));
+        } else if (key instanceof ECPublicKey ecKey) {
+            jwk.add("kty", "EC")
+                .add("crv", "P-256")
+                .add("x", BASE64_URL.encodeToString(unsigned(ecKey.getW().getAffineX(), P256_COORDINATE_LENGTH)))
+                .add("y", BASE64_URL.encodeToString(unsigned(ecKey.getW().getAffineY(), P256_COORDINATE_LENGTH)));
+        } else {
+            byte[] encoded = key.getEncoded();
+            jwk.add("kty", "OKP")
+                .add("crv", "Ed25519")
+                .add("x", BASE64_URL.encodeToString(Arrays.copyOfRange(encoded, encoded.length - ED25519_KEY_LENGTH, encoded.length)));
+        }
+
+        return jwk.build();
+    }
+
+    /**
+     * RFC 7638: SHA-256 of the required members, in lexicographic order and without whitespace
+     */
+    private static String thumbprint(PublicKey key) throws GeneralSecurityException {
+
+        JsonObject jwk = toJwk(key);
+
+        String canonicalJwk = jwk.keySet().stream()
+            .sorted()
+            .map(name -> "\"" + name + "\":\"" + jwk.getString(name) + "\"")
+            .collect(Collectors.joining(",", "{", "}"));
+
+        return BASE64_URL.encodeToString(MessageDigest.getInstance("SHA-256").digest(canonicalJwk.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Big endian bytes without the sign byte, left padded up to length (0 for no padding)
+     */
+    private static byte[] unsigned(BigInteger value, int length) {
+
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+
+        if (bytes.length >= length) {
+            return bytes;
+        }
+
+        byte[] padded = new byte[length];
+        System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+        return padded;
+    }
+
+    private static String readKeyFile(String location) throws IOException {
+
+        // Same lookup as the private key: resources first, then a file relative to the working directory
+        String resourceName = location.startsWith("/") ? location.substring(1) : location;
+
+        try (InputStream resource = currentThread().getContextClassLoader().getResourceAsStream(resourceName)) {
+
+            String pem = resource == null ? Files.readString(Paths.get(location).toAbsolutePath()) : new String(resource.readAllBytes(), StandardCharsets.US_ASCII);
+
+            return pem.lines()
+                .filter(line -> !line.startsWith("-----") && !line.endsWith("-----"))
+                .collect(Collectors.joining());
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.jwt;
+
+/**
+ * The algorithms tokens can be signed with, set by "mp.jwt.verify.publickey.algorithm", which both signing and verification read.
+ * The constant names are the JWS "alg" values. RS256 is the default, ES256 and EdDSA (Ed25519) sign much faster than a 2048 bit RSA key.
+ * <br>
+ * The key at "jwt.privatekey.location" must be a PKCS#8 key of the matching type and the public key at
+ * "mp.jwt.verify.publickey.location" must be its pair, which is checked when the application starts.
+ * Note that the MicroProfile JWT specification only requires RS256 and ES256 support from other verifiers.
+ *
+ * @author Carlos Gonçalves
+ */
+public enum SigningAlgorithm {
+
+    RS256("RSA", "SHA256withRSA"),
+    // JWS wants the raw R|S concatenation, not the DER encoding Java produces by default
+    ES256("EC", "SHA256withECDSAinP1363Format"),
+    EdDSA("Ed25519", "Ed25519");
+
+    private final String keyType;
+    private final String jcaName;
+
+    private SigningAlgorithm(String keyType, String jcaName) {
+        this.keyType = keyType;
+        this.jcaName = jcaName;
+    }
+
+    /**
+     * The algorithm name for java.security.KeyFactory
+     */
+    public String getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * The algorithm name for java.security.Signature
+     */
+    public String getJcaName() {
+        return jcaName;
+    }
+
+}
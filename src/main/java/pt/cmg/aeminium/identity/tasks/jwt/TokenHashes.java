@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.jwt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Tokens are never used as keys of a cache or a map, their hashes are, so a heap dump or a Hazelcast map listing does not hand them out.
+ *
+ * @author Carlos Gonçalves
+ */
+public final class TokenHashes {
+
+    private TokenHashes() {
+    }
+
+    /**
+     * The Base64 encoded SHA-256 of the token
+     */
+    public static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM must support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
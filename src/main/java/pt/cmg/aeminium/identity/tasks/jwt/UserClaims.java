@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.jwt;
+
+import java.io.Serializable;
+import java.util.List;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+
+/**
+ * The per user claims of a token (upn, sub, groups), detached from the User entity,
+ * so they can be kept in memory or in Hazelcast and a token can be minted from them without going to the database.
+ *
+ * @author Carlos Gonçalves
+ */
+public record UserClaims(Long userId, String name, List<String> groups) implements Serializable {
+
+    public UserClaims {
+        groups = groups == null ? List.of() : List.copyOf(groups);
+    }
+
+    public static UserClaims of(User user) {
+        return new UserClaims(user.getId(), user.getName(), user.getRolesAsStrings() == null ? null : List.copyOf(user.getRolesAsStrings()));
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.jwt;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.eclipse.microprofile.jwt.Claims;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonString;
+import jakarta.json.JsonValue;
+
+/**
+ * A token whose signature, issuer and expiry were already checked by {@link JWTokenVerifier}.
+ * It is immutable, so the same instance is shared by every request that presents the same token.
+ * <br>
+ * Claims are returned with the types the MicroProfile JWT specification asks for: the raw token, exp and iat as Long,
+ * groups and aud as Set&lt;String&gt;, strings as String and everything else as the JSON-P value.
+ *
+ * @author Carlos Gonçalves
+ */
+public final class VerifiedToken implements JsonWebToken {
+
+    private final String rawToken;
+    private final JsonObject claims;
+    private final Set<String> groups;
+
+    VerifiedToken(String rawToken, JsonObject claims) {
+        this.rawToken = rawToken;
+        this.claims = claims;
+        this.groups = toStringSet(claims.get(Claims.groups.name()));
+    }
+
+    /**
+     * The upn, as the specification asks, falling back to preferred_username and then to the subject.
+     */
+    @Override
+    public String getName() {
+        String name = claims.getString(Claims.upn.name(), null);
+        if (name == null) {
+            name = claims.getString(Claims.preferred_username.name(), null);
+        }
+        return name == null ? getSubject() : name;
+    }
+
+    @Override
+    public Set<String> getClaimNames() {
+        Set<String> names = new HashSet<>(claims.keySet());
+        names.add(Claims.raw_token.name());
+        return names;
+    }
+
+    @Override
+    public Set<String> getGroups() {
+        return groups;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getClaim(String claimName) {
+
+        if (Claims.raw_token.name().equals(claimName)) {
+            return (T) rawToken;
+        }
+
+        if (Claims.groups.name().equals(claimName)) {
+            return claims.containsKey(claimName) ? (T) groups : null;
+        }
+
+        JsonValue value = claims.get(claimName);
+        if (value == null) {
+            return null;
+        }
+
+        if (Claims.aud.name().equals(claimName)) {
+            return (T) toStringSet(value);
+        }
+
+        return (T) switch (value.getValueType()) {
+            case STRING -> ((JsonString) value).getString();
+            case NUMBER -> ((JsonNumber) value).isIntegral() ? (Object) ((JsonNumber) value).longValue() : value;
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            default -> value;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "VerifiedToken[sub=" + getSubject() + ", exp=" + getExpirationTime() + "]";
+    }
+
+    // aud and groups may come as a single string or as an array of strings
+    private static Set<String> toStringSet(JsonValue value) {
+
+        if (value == null) {
+            return Collections.emptySet();
+        }
+
+        if (value instanceof JsonString string) {
+            return Set.of(string.getString());
+        }
+
+        if (value instanceof JsonArray array) {
+            Set<String> strings = new HashSet<>(array.size());
+            for (JsonString string : array.getValuesAs(JsonString.class)) {
+                strings.add(string.getString());
+            }
+            return Collections.unmodifiableSet(strings);
+        }
+
+        return Collections.emptySet();
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.login;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+/**
+ * Runs the logins (database lookup and password hashing) on a small pool of their own, instead of on the HTTP worker threads.
+ * <br>
+ * Hashing is CPU bound, so there is no point in more threads than cores. The queue is bounded as well: once it is full,
+ * new logins are rejected right away instead of waiting, so a login storm costs the other endpoints almost nothing
+ * and the clients get a fast answer to retry later.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class LoginExecutor {
+
+    // 0 means one per available core
+    @Inject
+    @ConfigProperty(name = "login.executor.threads", defaultValue = "0")
+    private int threads;
+
+    @Inject
+    @ConfigProperty(name = "login.executor.queueSize", defaultValue = "64")
+    private int queueSize;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ThreadPoolExecutor executor;
+
+    private final LongAdder rejected = new LongAdder();
+
+    @PostConstruct
+    public void initialise() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs the login on the login pool. If the pool is saturated, the returned stage fails right away with a {@link RejectedExecutionException}.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> login) {
+        try {
+            return CompletableFuture.supplyAsync(login, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Gauge(name = "login.executor.active", unit = MetricUnits.NONE, absolute = true, description = "Logins being processed")
+    public long getActive() {
+        return executor.getActiveCount();
+    }
+
+    @Gauge(name = "login.executor.queued", unit = MetricUnits.NONE, absolute = true, description = "Logins waiting for a thread")
+    public long getQueued() {
+        return executor.getQueue().size();
+    }
+
+    @Gauge(name = "login.executor.rejected", unit = MetricUnits.NONE, absolute = true, description = "Logins rejected because the pool was saturated")
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.login;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import pt.cmg.aeminium.identity.tasks.users.EmailNormaliser;
+
+/**
+ * Per node brute force protection for the login: a token bucket per client address and another one per email.
+ * It is checked before the login is even queued, so a throttled attempt never reaches the database or the password hash.
+ * The email permit of a successful login is given back, so only failed attempts count against an email:
+ * users sharing a client are not throttled for logging in, and guessing passwords is what gets an email throttled.
+ * <br>
+ * The limits are per node, so with N nodes behind a load balancer an attacker gets up to N times the configured rate.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class LoginThrottle {
+
+    @Inject
+    @ConfigProperty(name = "login.throttle.address.perMinute", defaultValue = "30")
+    private int addressPermitsPerMinute;
+
+    @Inject
+    @ConfigProperty(name = "login.throttle.address.burst", defaultValue = "30")
+    private int addressBurst;
+
+    @Inject
+    @ConfigProperty(name = "login.throttle.email.perMinute", defaultValue = "5")
+    private int emailPermitsPerMinute;
+
+    @Inject
+    @ConfigProperty(name = "login.throttle.email.burst", defaultValue = "5")
+    private int emailBurst;
+
+    @Inject
+    @ConfigProperty(name = "login.throttle.maxEntries", defaultValue = "100000")
+    private int maxEntries;
+
+    private RateLimiter addressLimiter;
+    private RateLimiter emailLimiter;
+
+    private final LongAdder throttled = new LongAdder();
+
+    @PostConstruct
+    public void initialise() {
+        addressLimiter = new RateLimiter(addressPermitsPerMinute, addressBurst, maxEntries);
+        emailLimiter = new RateLimiter(emailPermitsPerMinute, emailBurst, maxEntries);
+    }
+
+    /**
+     * Takes a login attempt from both buckets. Returns 0 if the attempt may go on, or else how many seconds the client should wait.
+     *
+     * @param email may be null, if the credentials could not be read (those are rejected later without any lookup anyway)
+     */
+    public long tryAcquire(String clientAddress, String email) {
+
+        long now = System.nanoTime();
+
+        long wait = clientAddress == null ? 0 : addressLimiter.tryAcquire(clientAddress, now);
+
+        if (wait == 0 && email != null) {
+            wait = emailLimiter.tryAcquire(EmailNormaliser.normalise(email), now);
+        }
+
+        if (wait == 0) {
+            return 0;
+        }
+
+        throttled.increment();
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    /**
+     * Gives back the email permit of an attempt that turned out to be a successful login
+     */
+    public void onLoginSucceeded(String email) {
+        if (email != null) {
+            emailLimiter.release(EmailNormaliser.normalise(email));
+        }
+    }
+
+    @Gauge(name = "login.throttle.rejected", unit = MetricUnits.NONE, absolute = true, description = "Login attempts rejected by the brute force throttle")
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    @Gauge(name = "login.throttle.trackedKeys", unit = MetricUnits.NONE, absolute = true, description = "Client addresses and emails currently tracked by the throttle")
+    public long getTrackedKeys() {
+        return addressLimiter.size() + emailLimiter.size();
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.login;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket per key, implemented as GCRA: each key only keeps the time at which its bucket would be full again
+ * (the "theoretical arrival time"), updated with a compare and set. A request is allowed if that time is no further
+ * in the future than the burst allows, and each allowed request pushes it forward by one emission interval.
+ * <br>
+ * A key whose time is in the past has a full bucket, which is the same as not being tracked at all, so those entries are dropped
+ * whenever the map reaches its maximum size. If that is not enough, arbitrary entries are dropped, which at worst gives those keys a full bucket again.
+ *
+ * @author Carlos Gonçalves
+ */
+final class RateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final int maxEntries;
+
+    private final Map<String, AtomicLong> arrivalTimes = new ConcurrentHashMap<>();
+
+    /**
+     * @param permitsPerMinute the sustained rate
+     * @param burst how many requests can be made at once with a full bucket
+     * @param maxEntries the maximum number of keys tracked
+     */
+    RateLimiter(int permitsPerMinute, int burst, int maxEntries) {
+        this.emissionIntervalNanos = TimeUnit.MINUTES.toNanos(1) / permitsPerMinute;
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Takes a permit for the key. Returns 0 if it was granted, or else how many nanoseconds to wait before trying again.
+     */
+    long tryAcquire(String key, long now) {
+
+        AtomicLong arrivalTime = arrivalTimes.get(key);
+        if (arrivalTime == null) {
+            if (arrivalTimes.size() >= maxEntries) {
+                makeRoom(now);
+            }
+            arrivalTime = arrivalTimes.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long current = arrivalTime.get();
+            long theoreticalArrival = Math.max(current, now);
+
+            long wait = theoreticalArrival - burstToleranceNanos - now;
+            if (wait > 0) {
+                return wait;
+            }
+
+            if (arrivalTime.compareAndSet(current, theoreticalArrival + emissionIntervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gives back a permit taken with {@link #tryAcquire(String, long)}. An untracked key already has a full bucket, so there is nothing to give back.
+     */
+    void release(String key) {
+        AtomicLong arrivalTime = arrivalTimes.get(key);
+        if (arrivalTime != null) {
+            arrivalTime.addAndGet(-emissionIntervalNanos);
+        }
+    }
+
+    int size() {
+        return arrivalTimes.size();
+    }
+
+    private void makeRoom(long now) {
+
+        arrivalTimes.values().removeIf(arrivalTime -> arrivalTime.get() - now <= 0);
+
+        Iterator<String> keys = arrivalTimes.keySet().iterator();
+        while (arrivalTimes.size() >= maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+}
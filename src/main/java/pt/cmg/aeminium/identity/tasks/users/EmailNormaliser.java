@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users;
+
+import java.util.Locale;
+
+/**
+ * Emails are stored trimmed and in lower case, and every lookup normalises its email the same way before matching the stored one as is.
+ * Matching on lower(email) instead would not use the unique index of the email column.
+ *
+ * @author Carlos Gonçalves
+ */
+public class EmailNormaliser {
+
+    private EmailNormaliser() {
+    }
+
+    /**
+     * The email as it is stored, or null if it is null
+     */
+    public static String normalise(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import pt.cmg.jakartautils.identity.PasswordUtils;
+
+/**
+ * Hashes the passwords of many new users at once, on a pool of its own so bulk creations do not take the HTTP workers or the login pool.
+ * <br>
+ * Hashing is CPU bound, so there are no more threads than cores. When the queue is full the caller hashes the password itself,
+ * which slows down whoever is submitting instead of piling up work.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class PasswordHasher {
+
+    public record HashedPassword(String salt, String saltedPassword) {
+
+        public static HashedPassword of(String password) {
+            String salt = PasswordUtils.generateSalt();
+            return new HashedPassword(salt, PasswordUtils.generateSaltedPassword(salt, password));
+        }
+    }
+
+    // 0 means one per available core
+    @Inject
+    @ConfigProperty(name = "users.passwordHasher.threads", defaultValue = "0")
+    private int threads;
+
+    @Inject
+    @ConfigProperty(name = "users.passwordHasher.queueSize", defaultValue = "256")
+    private int queueSize;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void initialise() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public CompletableFuture<HashedPassword> hash(String password) {
+        return CompletableFuture.supplyAsync(() -> HashedPassword.of(password), executor);
+    }
+
+    /**
+     * Hashes the passwords in parallel and waits for all of them, in the same order
+     */
+    public List<HashedPassword> hashAll(List<String> passwords) {
+        // Every hash is submitted before waiting for any
+        List<CompletableFuture<HashedPassword>> hashes = passwords.stream().map(this::hash).toList();
+        return hashes.stream().map(CompletableFuture::join).toList();
+    }
+
+    @Gauge(name = "users.passwordHasher.active", unit = MetricUnits.NONE, absolute = true, description = "Passwords being hashed")
+    public long getActive() {
+        return executor.getActiveCount();
+    }
+
+    @Gauge(name = "users.passwordHasher.queued", unit = MetricUnits.NONE, absolute = true, description = "Passwords waiting for a thread")
+    public long getQueued() {
+        return executor.getQueue().size();
+    }
+
+}
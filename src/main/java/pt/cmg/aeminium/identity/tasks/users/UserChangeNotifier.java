@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.event.TransactionPhase;
+import jakarta.inject.Inject;
+import pt.cmg.aeminium.identity.cache.RefreshTokens;
+import pt.cmg.aeminium.identity.cache.UserClaimsCache;
+import pt.cmg.aeminium.identity.cache.UserStatusCache;
+import pt.cmg.aeminium.identity.communication.cdievents.EventPublisher;
+
+/**
+ * Drops whatever is cached about a changed user, only after the change is committed.
+ * <br>
+ * Doing it before the commit leaves a window where a login or a refresh still reads the old user and caches it again,
+ * and the claims cache has no TTL to ever correct that. A rolled back change has nothing to drop, so nothing is done.
+ * Local caches are dropped right away, the remaining cluster members drop theirs when the event arrives.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class UserChangeNotifier {
+
+    @Inject
+    private UserStatusCache userStatusCache;
+
+    @Inject
+    private UserClaimsCache userClaimsCache;
+
+    @Inject
+    private RefreshTokens refreshTokens;
+
+    @Inject
+    private EventPublisher eventPublisher;
+
+    public void onUserChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) UserChanged userChanged) {
+        userStatusCache.invalidate(userChanged.userId());
+        userClaimsCache.invalidate(userChanged.userId());
+        // The map is cluster wide, so this is done here once and not by every member on the event
+        refreshTokens.revokeUser(userChanged.userId());
+        eventPublisher.sendUserChangedEvent(userChanged.userId());
+    }
+
+}
@@ -0,0 +1,13 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users;
+
+/**
+ * Local CDI event fired whenever a user is changed, handled by {@link UserChangeNotifier} once the change is committed.
+ *
+ * @author Carlos Gonçalves
+ */
+public record UserChanged(Long userId) {
+}
@@ -4,10 +4,15 @@
  */
 package pt.cmg.aeminium.identity.tasks.users;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import jakarta.ejb.Lock;
 import jakarta.ejb.LockType;
 import jakarta.ejb.Singleton;
+import jakarta.enterprise.event.Event;
 import jakarta.inject.Inject;
 import pt.cmg.aeminium.datamodel.common.entities.localisation.Language;
 import pt.cmg.aeminium.datamodel.users.dao.identity.RoleDAO;
@@ -17,7 +22,7 @@ import pt.cmg.aeminium.datamodel.users.entities.identity.User;
 import pt.cmg.aeminium.datamodel.users.entities.identity.User.Status;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.CreateUserDTO;
 import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.EditUserDTO;
-import pt.cmg.jakartautils.identity.PasswordUtils;
+import pt.cmg.aeminium.identity.tasks.users.PasswordHasher.HashedPassword;
 
 /**
  * @author Carlos Gonçalves
@@ -32,28 +37,53 @@ public class UserCreator {
     @Inject
     private RoleDAO roleDAO;
 
+    @Inject
+    private Event<UserChanged> userChangedEvent;
+
+    @Inject
+    private PasswordHasher passwordHasher;
+
     public User creatUser(CreateUserDTO userDTO) {
 
-        User newUser = new User();
+        User newUser = newUser(userDTO, roleDAO.findByNames(userDTO.roles), HashedPassword.of(userDTO.password));
 
-        newUser.setName(userDTO.name);
-        newUser.setEmail(userDTO.email);
-        newUser.setLanguage(userDTO.language == null ? Language.DEFAULT_LANGUAGE : userDTO.language);
+        userDAO.create(newUser, true);
 
-        List<Role> roles = roleDAO.findByNames(userDTO.roles);
-        newUser.setRoles(roles);
+        return newUser;
+    }
 
-        String newSalt = PasswordUtils.generateSalt();
-        String newSaltedPassword = PasswordUtils.generateSaltedPassword(newSalt, userDTO.password);
+    /**
+     * Creates the users in the current transaction, all or none. They must have been validated already.
+     * <br>
+     * The roles are looked up once for all of them and the passwords are hashed in parallel. The users are flushed once at the end,
+     * so the inserts go to the database in JDBC batches (see "eclipselink.jdbc.batch-writing" in persistence.xml).
+     */
+    public List<User> createUsers(List<CreateUserDTO> userDTOs) {
+        return createUsers(userDTOs, passwordHasher.hashAll(userDTOs.stream().map(userDTO -> userDTO.password).toList()));
+    }
 
-        newUser.setSalt(newSalt);
-        newUser.setPassword(newSaltedPassword);
+    /**
+     * As {@link #createUsers(List)}, with the passwords hashed already (one per user, in the same order), for callers that may retry
+     */
+    public List<User> createUsers(List<CreateUserDTO> userDTOs, List<HashedPassword> passwords) {
 
-        newUser.setStatus(Status.PENDING);
+        List<Role.Name> roleNames = userDTOs.stream().flatMap(userDTO -> userDTO.roles.stream()).distinct().toList();
+        Map<Role.Name, Role> rolesByName = roleDAO.findByNames(roleNames).stream().collect(Collectors.toMap(Role::getName, Function.identity()));
 
-        userDAO.create(newUser, true);
+        List<User> newUsers = new ArrayList<>(userDTOs.size());
 
-        return newUser;
+        for (int i = 0; i < userDTOs.size(); i++) {
+
+            CreateUserDTO userDTO = userDTOs.get(i);
+            List<Role> roles = userDTO.roles.stream().distinct().map(rolesByName::get).toList();
+
+            User newUser = newUser(userDTO, roles, passwords.get(i));
+            userDAO.create(newUser, i == userDTOs.size() - 1);
+
+            newUsers.add(newUser);
+        }
+
+        return newUsers;
     }
 
     public User editUser(Long userId, EditUserDTO userDTO) {
@@ -65,12 +95,15 @@ public class UserCreator {
         }
 
         if (userDTO.email != null) {
-            editingUser.setEmail(userDTO.email);
+            editingUser.setEmail(EmailNormaliser.normalise(userDTO.email));
         }
 
         if (userDTO.language != null) {
             editingUser.setLanguage(userDTO.language);
         }
+
+        notifyUserChanged(userId);
+
         return editingUser;
     }
 
@@ -81,7 +114,34 @@ public class UserCreator {
         List<Role> roles = roleDAO.findByNames(roleNames);
         editingUser.setRoles(roles);
 
+        notifyUserChanged(userId);
+
         return editingUser;
     }
 
+    private static User newUser(CreateUserDTO userDTO, List<Role> roles, HashedPassword password) {
+
+        User newUser = new User();
+
+        newUser.setName(userDTO.name);
+        newUser.setEmail(EmailNormaliser.normalise(userDTO.email));
+        newUser.setLanguage(userDTO.language == null ? Language.DEFAULT_LANGUAGE : userDTO.language);
+
+        newUser.setRoles(new ArrayList<>(roles));
+
+        newUser.setSalt(password.salt());
+        newUser.setPassword(password.saltedPassword());
+
+        newUser.setStatus(Status.PENDING);
+
+        return newUser;
+    }
+
+    /**
+     * The caches are dropped by {@link UserChangeNotifier} once the transaction commits
+     */
+    private void notifyUserChanged(Long userId) {
+        userChangedEvent.fire(new UserChanged(userId));
+    }
+
 }
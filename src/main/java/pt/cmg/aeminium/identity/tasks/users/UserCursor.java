@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Position of a keyset walk over the users: the id of the last user of the previous page.
+ * <br>
+ * Clients only see it encoded, so it can carry a sort key other than the id later without breaking them.
+ * An empty cursor means the walk starts at the first user.
+ *
+ * @author Carlos Gonçalves
+ */
+public record UserCursor(long lastId) {
+
+    public static final UserCursor FIRST = new UserCursor(0);
+
+    private static final String VERSION_PREFIX = "id:";
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((VERSION_PREFIX + lastId).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns the decoded cursor, or empty if it is not one of ours
+     */
+    public static Optional<UserCursor> decode(String cursor) {
+
+        if (cursor.isBlank()) {
+            return Optional.of(FIRST);
+        }
+
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            if (!decoded.startsWith(VERSION_PREFIX)) {
+                return Optional.empty();
+            }
+
+            long lastId = Long.parseLong(decoded.substring(VERSION_PREFIX.length()));
+            return lastId < 0 ? Optional.empty() : Optional.of(new UserCursor(lastId));
+
+        } catch (IllegalArgumentException e) {
+            // Covers NumberFormatException as well
+            return Optional.empty();
+        }
+    }
+
+}
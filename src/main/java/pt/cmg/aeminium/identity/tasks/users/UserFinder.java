@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.CursoredStream;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import jakarta.transaction.Transactional;
+import jakarta.transaction.Transactional.TxType;
+import pt.cmg.aeminium.datamodel.users.entities.identity.Role;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.SearchUsersFilterDTO;
+
+/**
+ * User searches that UserDAO does not offer.
+ * <br>
+ * Pages are read by keyset ("id > last id order by id"), so the database goes straight to the first row of the page
+ * through the primary key index instead of scanning and discarding every row before it, as an offset does.
+ * Exports go through a database cursor, fetching a few hundred rows at a time and letting go of the ones already handed out.
+ * The filters are the ones of {@link SearchUsersFilterDTO}: status in, role in and email. Emails are matched as they are stored
+ * (see {@link EmailNormaliser}), so the email index is used, and ignoring case, as the stored ones are all in lower case.
+ * Roles are batch fetched, a page costs two queries whatever its size.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class UserFinder {
+
+    private static final String CACHE_STORE_MODE_HINT = "jakarta.persistence.cache.storeMode";
+
+    // The roles of a page (or of a cursor batch) are read with one "where user_id in (...)" query instead of one query per user
+    private static final String ROLES_BATCH = "user.roles";
+
+    private static final int MAX_PARAMETERS_PER_QUERY = 1000;
+
+    @PersistenceContext(unitName = "aem-data")
+    private EntityManager database;
+
+    @Inject
+    @ConfigProperty(name = "users.export.fetchSize", defaultValue = "500")
+    private int exportFetchSize;
+
+    /**
+     * Returns up to size users with an id greater than the cursor, in id order.
+     */
+    public List<User> findPage(SearchUsersFilterDTO filter, UserCursor cursor, int size) {
+        return database.createQuery(filteredQuery(filter, cursor))
+            .setHint(QueryHints.BATCH, ROLES_BATCH)
+            .setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN)
+            .setMaxResults(size)
+            .getResultList();
+    }
+
+    /**
+     * The role names of each of the users, by user id, in one query per {@value #MAX_PARAMETERS_PER_QUERY} users.
+     * For user lists that come from queries without batch fetching (UserDAO), so their lazy roles are not loaded one user at a time.
+     */
+    public Map<Long, List<Role.Name>> findRoles(List<User> users) {
+
+        Map<Long, List<Role.Name>> rolesByUser = new HashMap<>();
+        List<Long> userIds = users.stream().map(User::getId).toList();
+
+        for (int from = 0; from < userIds.size(); from += MAX_PARAMETERS_PER_QUERY) {
+
+            CriteriaBuilder builder = database.getCriteriaBuilder();
+            CriteriaQuery<Object[]> query = builder.createQuery(Object[].class);
+            Root<User> user = query.from(User.class);
+            Join<User, Role> role = user.join("roles");
+
+            query.multiselect(user.get("id"), role.get("name"))
+                .where(user.get("id").in(userIds.subList(from, Math.min(from + MAX_PARAMETERS_PER_QUERY, userIds.size()))));
+
+            for (Object[] row : database.createQuery(query).getResultList()) {
+                rolesByUser.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((Role.Name) row[1]);
+            }
+        }
+
+        return rolesByUser;
+    }
+
+    /**
+     * Which of the emails already belong to a user, normalised (see {@link EmailNormaliser})
+     */
+    public Set<String> findExistingEmails(Collection<String> emails) {
+
+        Set<String> existingEmails = new HashSet<>();
+        List<String> normalisedEmails = emails.stream().map(EmailNormaliser::normalise).distinct().toList();
+
+        for (int from = 0; from < normalisedEmails.size(); from += MAX_PARAMETERS_PER_QUERY) {
+
+            CriteriaBuilder builder = database.getCriteriaBuilder();
+            CriteriaQuery<String> query = builder.createQuery(String.class);
+            Root<User> user = query.from(User.class);
+            Expression<String> email = user.get("email");
+
+            query.select(email).where(email.in(normalisedEmails.subList(from, Math.min(from + MAX_PARAMETERS_PER_QUERY, normalisedEmails.size()))));
+
+            existingEmails.addAll(database.createQuery(query).getResultList());
+        }
+
+        return existingEmails;
+    }
+
+    /**
+     * Hands every user that matches the filter to the action, in id order, and returns how many there were.
+     * <br>
+     * PostgreSQL only honours the fetch size inside a transaction, hence REQUIRED: the rows then come in batches through a server side cursor.
+     * The users are detached from the persistence context after each batch and bypass the shared cache, so memory use does not grow with the table.
+     * The action must not keep them.
+     */
+    @Transactional(value = TxType.REQUIRED)
+    public long forEachUser(SearchUsersFilterDTO filter, Consumer<User> action) {
+
+        Query query = database.createQuery(filteredQuery(filter, UserCursor.FIRST))
+            .setHint(QueryHints.CURSOR, HintValues.TRUE)
+            .setHint(QueryHints.CURSOR_PAGE_SIZE, exportFetchSize)
+            .setHint(QueryHints.BATCH, ROLES_BATCH)
+            .setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN)
+            .setHint(QueryHints.JDBC_FETCH_SIZE, exportFetchSize)
+            .setHint(CACHE_STORE_MODE_HINT, CacheStoreMode.BYPASS);
+
+        CursoredStream users = (CursoredStream) query.getSingleResult();
+        long count = 0;
+
+        try {
+            while (users.hasNext()) {
+                action.accept((User) users.next());
+
+                if (++count % exportFetchSize == 0) {
+                    users.releasePrevious();
+                    database.clear();
+                }
+            }
+        } finally {
+            users.close();
+        }
+
+        return count;
+    }
+
+    private CriteriaQuery<User> filteredQuery(SearchUsersFilterDTO filter, UserCursor cursor) {
+
+        CriteriaBuilder builder = database.getCriteriaBuilder();
+        CriteriaQuery<User> query = builder.createQuery(User.class);
+        Root<User> user = query.from(User.class);
+
+        List<Predicate> predicates = filterPredicates(builder, query, user, filter);
+        predicates.add(builder.greaterThan(user.<Long>get("id"), cursor.lastId()));
+
+        return query.select(user)
+            .where(predicates.toArray(Predicate[]::new))
+            .orderBy(builder.asc(user.get("id")));
+    }
+
+    private static List<Predicate> filterPredicates(CriteriaBuilder builder, CriteriaQuery<?> query, Root<User> user, SearchUsersFilterDTO filter) {
+
+        List<Predicate> predicates = new ArrayList<>();
+
+        if (filter.status != null && !filter.status.isEmpty()) {
+            predicates.add(user.get("status").in(filter.status));
+        }
+
+        if (filter.email != null && !filter.email.isBlank()) {
+            predicates.add(builder.equal(user.get("email"), EmailNormaliser.normalise(filter.email)));
+        }
+
+        // A subquery instead of a join, so a user with several of the roles is not returned once per role
+        if (filter.roles != null && !filter.roles.isEmpty()) {
+            Subquery<Long> withRole = query.subquery(Long.class);
+            Root<User> sameUser = withRole.correlate(user);
+            withRole.select(sameUser.<Long>get("id")).where(sameUser.join("roles").get("name").in(filter.roles));
+            predicates.add(builder.exists(withRole));
+        }
+
+        return predicates;
+    }
+
+}
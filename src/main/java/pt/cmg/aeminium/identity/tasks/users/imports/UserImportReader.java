@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users.imports;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.bind.Jsonb;
+import jakarta.json.bind.JsonbException;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.CreateUserDTO;
+import pt.cmg.aeminium.identity.configuration.jsonb.JsonbProvider;
+import pt.cmg.jakartautils.errors.ErrorDTO;
+
+/**
+ * Reads an uploaded import file a chunk of rows at a time, so only one chunk is ever in memory.
+ * <br>
+ * NDJSON lines are CreateUserDTO objects. CSV files start with a header naming the columns (name, email, password, language, roles, in any order),
+ * roles are separated by "|". CSV rows are turned into the same JSON object, so both formats go through the same JSON-B mapping.
+ * Blank lines are skipped.
+ *
+ * @author Carlos Gonçalves
+ */
+final class UserImportReader implements Closeable {
+
+    /**
+     * Either the parsed user or the reason the line could not be parsed
+     */
+    record Row(long line, CreateUserDTO user, ErrorDTO parseError) {
+    }
+
+    private static final String ROLES_SEPARATOR = "\\|";
+
+    private final BufferedReader reader;
+
+    private final UserImporter.Format format;
+
+    private final Jsonb jsonb = JsonbProvider.getJsonB();
+
+    private List<String> csvColumns;
+
+    private long line;
+
+    UserImportReader(Path file, UserImporter.Format format) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        this.format = format;
+    }
+
+    /**
+     * The next rows, up to size. Empty once the file has been read.
+     */
+    List<Row> nextChunk(int size) throws IOException {
+
+        List<Row> rows = new ArrayList<>(size);
+        String text;
+
+        while (rows.size() < size && (text = reader.readLine()) != null) {
+
+            line++;
+
+            if (text.isBlank()) {
+                continue;
+            }
+
+            if (format == UserImporter.Format.CSV && csvColumns == null) {
+                csvColumns = splitCsv(text).stream().map(column -> column.trim().toLowerCase(Locale.ROOT)).toList();
+                continue;
+            }
+
+            rows.add(parse(text));
+        }
+
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private Row parse(String text) {
+        try {
+            String json = format == UserImporter.Format.CSV ? csvToJson(text) : text;
+            CreateUserDTO user = jsonb.fromJson(json, CreateUserDTO.class);
+
+            return user == null ? new Row(line, null, new ErrorDTO(6, "Malformed record")) : new Row(line, user, null);
+
+        } catch (JsonbException | IllegalArgumentException e) {
+            return new Row(line, null, new ErrorDTO(6, "Malformed record: " + e.getMessage()));
+        }
+    }
+
+    private String csvToJson(String text) {
+
+        List<String> values = splitCsv(text);
+        if (values.size() != csvColumns.size()) {
+            throw new IllegalArgumentException("expected " + csvColumns.size() + " columns, found " + values.size());
+        }
+
+        JsonObjectBuilder user = Json.createObjectBuilder();
+
+        for (int i = 0; i < values.size(); i++) {
+
+            String value = values.get(i);
+            if (value.isEmpty()) {
+                continue;
+            }
+
+            if ("roles".equals(csvColumns.get(i))) {
+                JsonArrayBuilder roles = Json.createArrayBuilder();
+                Arrays.stream(value.split(ROLES_SEPARATOR)).map(String::trim).filter(role -> !role.isEmpty()).forEach(roles::add);
+                user.add("roles", roles);
+            } else {
+                user.add(csvColumns.get(i), value);
+            }
+        }
+
+        return user.build().toString();
+    }
+
+    /**
+     * RFC 4180 fields of one line: separated by commas, optionally quoted, with "" for a quote inside quotes. Fields cannot span lines.
+     */
+    private static List<String> splitCsv(String text) {
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < text.length(); i++) {
+
+            char c = text.charAt(i);
+
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+
+        fields.add(field.toString());
+        return fields;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users.imports;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The state of an import job, as kept in the cluster wide status map. Only the member running the job writes it, after every chunk,
+ * unless that member leaves the cluster, in which case the job is marked as failed by the oldest member.
+ * <br>
+ * Times are epoch milliseconds, and the errors of each rejected row are kept as the JSON array the API returns,
+ * so the entries hold JDK types only.
+ *
+ * @author Carlos Gonçalves
+ */
+public record UserImportStatus(
+    String jobId,
+    String ownerMemberId,
+    State state,
+    long submittedAt,
+    Long startedAt,
+    Long finishedAt,
+    long rowsRead,
+    long rowsCreated,
+    long rowsRejected,
+    List<RowError> rowErrors,
+    String failure) implements Serializable {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    /**
+     * @param line the line of the uploaded file, starting at 1
+     */
+    public record RowError(long line, String errorsJson) implements Serializable {
+    }
+
+    public UserImportStatus {
+        rowErrors = List.copyOf(rowErrors);
+    }
+
+    /**
+     * @param ownerMemberId the UUID of the cluster member that runs the job
+     */
+    public static UserImportStatus queued(String jobId, String ownerMemberId, long now) {
+        return new UserImportStatus(jobId, ownerMemberId, State.QUEUED, now, null, null, 0, 0, 0, List.of(), null);
+    }
+
+    public boolean isActive() {
+        return state == State.QUEUED || state == State.RUNNING;
+    }
+
+    public UserImportStatus started(long now) {
+        return new UserImportStatus(jobId, ownerMemberId, State.RUNNING, submittedAt, now, null, rowsRead, rowsCreated, rowsRejected, rowErrors, null);
+    }
+
+    /**
+     * Adds the outcome of a chunk. Only the first maxRowErrors errors are kept, the count of rejected rows is always complete.
+     */
+    public UserImportStatus progressed(long read, long created, List<RowError> newRowErrors, int maxRowErrors) {
+
+        List<RowError> errors = rowErrors;
+        if (!newRowErrors.isEmpty() && rowErrors.size() < maxRowErrors) {
+            errors = new ArrayList<>(rowErrors);
+            errors.addAll(newRowErrors.subList(0, Math.min(newRowErrors.size(), maxRowErrors - rowErrors.size())));
+        }
+
+        return new UserImportStatus(jobId, ownerMemberId, state, submittedAt, startedAt, null, rowsRead + read, rowsCreated + created, rowsRejected + newRowErrors.size(), errors, null);
+    }
+
+    public UserImportStatus finished(long now) {
+        return new UserImportStatus(jobId, ownerMemberId, State.DONE, submittedAt, startedAt, now, rowsRead, rowsCreated, rowsRejected, rowErrors, null);
+    }
+
+    public UserImportStatus failed(long now, String reason) {
+        return new UserImportStatus(jobId, ownerMemberId, State.FAILED, submittedAt, startedAt, now, rowsRead, rowsCreated, rowsRejected, rowErrors, reason);
+    }
+
+    /**
+     * Rows read per second since the job started, up to now if it is still running
+     */
+    public double getRowsPerSecond(long now) {
+
+        if (startedAt == null) {
+            return 0;
+        }
+
+        long elapsedMillis = (finishedAt == null ? now : finishedAt) - startedAt;
+        return elapsedMillis <= 0 ? 0 : rowsRead * 1000.0 / elapsedMillis;
+    }
+
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users.imports;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import com.hazelcast.cluster.MembershipAdapter;
+import com.hazelcast.cluster.MembershipEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.context.Initialized;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.json.bind.Jsonb;
+import jakarta.validation.ConstraintViolationException;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.validators.UserCreationValidator;
+import pt.cmg.aeminium.identity.configuration.jsonb.JsonbProvider;
+import pt.cmg.aeminium.identity.tasks.users.PasswordHasher;
+import pt.cmg.aeminium.identity.tasks.users.PasswordHasher.HashedPassword;
+import pt.cmg.aeminium.identity.tasks.users.UserCreator;
+import pt.cmg.aeminium.identity.tasks.users.imports.UserImportStatus.RowError;
+import pt.cmg.jakartautils.errors.ErrorDTO;
+import pt.cmg.jakartautils.text.TextFormatter;
+
+/**
+ * Runs bulk user imports in the background, so an upload of any size answers right away with a job id.
+ * <br>
+ * The upload is spooled to a temporary file and the job goes through it a chunk at a time: parse, validate (the same rules as
+ * {@link UserCreationValidator#isValidUsersForCreation(List)}), hash the passwords in parallel and insert the chunk in JDBC batches,
+ * in a transaction of its own. A chunk that breaks a database constraint (an email taken in the meantime) is retried in smaller parts,
+ * so only the rows that cannot be stored are rejected. Any other failure to store (the database or the transaction manager being
+ * unavailable) fails the job, rather than rejecting every row.
+ * The next chunk is only read once the previous one is stored, so the memory a job takes does not depend
+ * on the file size and the database sets the pace. A failure in one chunk does not undo the ones before it.
+ * <br>
+ * The status of each job is kept in a cluster wide Hazelcast map, updated after every chunk, so any member can answer a status poll.
+ * Jobs run on a small pool of their own, with a bounded number of waiting jobs. A slot is taken before the upload is spooled and the upload
+ * is capped in size, so neither a full queue nor an oversized file costs any disk. Each status records the member running the job,
+ * and when a member leaves the cluster the oldest member marks its unfinished jobs as failed, instead of leaving them running until they expire.
+ *
+ * @author Carlos Gonçalves
+ */
+@ApplicationScoped
+public class UserImporter {
+
+    private static final Logger LOGGER = Logger.getLogger(UserImporter.class.getName());
+
+    private static final String STATUS_MAP_NAME = "user-imports";
+
+    private static final String INTEGRITY_CONSTRAINT_VIOLATION = "23";
+
+    private static final int SPOOL_BUFFER_BYTES = 64 * 1024;
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    /**
+     * The upload is larger than users.import.maxBytes
+     */
+    public static class UploadTooLargeException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public UploadTooLargeException(long maxBytes) {
+            super(TextFormatter.formatMessage("Imports cannot be larger than {0} bytes", maxBytes));
+        }
+    }
+
+    @Inject
+    @ConfigProperty(name = "users.import.concurrentJobs", defaultValue = "1")
+    private int concurrentJobs;
+
+    @Inject
+    @ConfigProperty(name = "users.import.queueSize", defaultValue = "4")
+    private int queueSize;
+
+    @Inject
+    @ConfigProperty(name = "users.import.maxBytes", defaultValue = "104857600")
+    private long maxBytes;
+
+    @Inject
+    @ConfigProperty(name = "users.import.chunkSize", defaultValue = "500")
+    private int chunkSize;
+
+    @Inject
+    @ConfigProperty(name = "users.import.maxRowErrors", defaultValue = "1000")
+    private int maxRowErrors;
+
+    @Inject
+    @ConfigProperty(name = "users.import.statusHours", defaultValue = "24")
+    private long statusHours;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @Inject
+    private HazelcastInstance hazelcast;
+
+    @Inject
+    private UserCreationValidator userCreationValidator;
+
+    @Inject
+    private UserCreator userCreator;
+
+    @Inject
+    private PasswordHasher passwordHasher;
+
+    private ThreadPoolExecutor executor;
+
+    // Jobs running or waiting on this member, taken when an upload arrives and given back when its job ends
+    private Semaphore slots;
+
+    // Job id -> status
+    private IMap<String, UserImportStatus> statuses;
+
+    private UUID membershipListenerId;
+
+    @PostConstruct
+    public void initialise() {
+        statuses = hazelcast.getMap(STATUS_MAP_NAME);
+        slots = new Semaphore(concurrentJobs + queueSize);
+        // The slots bound the queue, it never holds more than queueSize jobs
+        executor = new ThreadPoolExecutor(concurrentJobs, concurrentJobs, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        membershipListenerId = hazelcast.getCluster().addMembershipListener(new MembershipAdapter() {
+            @Override
+            public void memberRemoved(MembershipEvent event) {
+                failJobsOf(event.getMember().getUuid().toString());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hazelcast.getCluster().removeMembershipListener(membershipListenerId);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates the importer when the application starts, so every member listens for departures, not just the ones that took an upload
+     */
+    public void listenOnStartup(@Observes @Initialized(ApplicationScoped.class) Object event) {
+        // Observing the event is enough for the container to create the bean
+    }
+
+    /**
+     * Takes a slot, spools the upload and queues the job. Throws a {@link RejectedExecutionException} if there are too many jobs
+     * waiting already, before reading the upload, and an {@link UploadTooLargeException} as soon as the upload is known to be too large.
+     *
+     * @param declaredBytes the length the client declared, or -1 if it did not
+     */
+    public UserImportStatus submit(InputStream upload, long declaredBytes, Format format) throws IOException {
+
+        if (declaredBytes > maxBytes) {
+            throw new UploadTooLargeException(maxBytes);
+        }
+
+        if (!slots.tryAcquire()) {
+            throw new RejectedExecutionException("Too many imports waiting");
+        }
+
+        Path file = null;
+
+        try {
+            file = Files.createTempFile("user-import-", "." + format.name().toLowerCase());
+            spool(upload, file);
+
+            // Published before the job is queued, so a job that starts right away is not overwritten back to queued
+            UserImportStatus status = UserImportStatus.queued(UUID.randomUUID().toString(), localMemberId(), System.currentTimeMillis());
+            publish(status);
+
+            Path spooled = file;
+            try {
+                executor.execute(() -> run(status, spooled, format));
+            } catch (RejectedExecutionException e) {
+                statuses.delete(status.jobId());
+                throw e;
+            }
+
+            return status;
+
+        } catch (IOException | RuntimeException e) {
+            slots.release();
+            if (file != null) {
+                deleteQuietly(file);
+            }
+            throw e;
+        }
+    }
+
+    public Optional<UserImportStatus> getStatus(String jobId) {
+        return Optional.ofNullable(statuses.get(jobId));
+    }
+
+    @Gauge(name = "users.import.running", unit = MetricUnits.NONE, absolute = true, description = "Import jobs running on this member")
+    public long getRunning() {
+        return executor.getActiveCount();
+    }
+
+    @Gauge(name = "users.import.queued", unit = MetricUnits.NONE, absolute = true, description = "Import jobs waiting on this member")
+    public long getQueued() {
+        return executor.getQueue().size();
+    }
+
+    private void run(UserImportStatus queued, Path file, Format format) {
+
+        UserImportStatus status = queued.started(System.currentTimeMillis());
+        publish(status);
+
+        try (UserImportReader reader = new UserImportReader(file, format)) {
+
+            List<UserImportReader.Row> rows;
+            while (!(rows = reader.nextChunk(chunkSize)).isEmpty()) {
+                status = importChunk(status, rows);
+                publish(status);
+            }
+
+            publish(status.finished(System.currentTimeMillis()));
+
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.SEVERE, TextFormatter.formatMessage("User import {0} failed", status.jobId()), e);
+            publish(status.failed(System.currentTimeMillis(), e.getMessage()));
+        } finally {
+            deleteQuietly(file);
+            slots.release();
+        }
+    }
+
+    UserImportStatus importChunk(UserImportStatus status, List<UserImportReader.Row> rows) {
+
+        Jsonb jsonb = JsonbProvider.getJsonB();
+        List<RowError> rowErrors = new ArrayList<>();
+
+        List<UserImportReader.Row> parsedRows = new ArrayList<>(rows.size());
+        for (UserImportReader.Row row : rows) {
+            if (row.parseError() != null) {
+                rowErrors.add(new RowError(row.line(), jsonb.toJson(List.of(row.parseError()))));
+            } else {
+                parsedRows.add(row);
+            }
+        }
+
+        Map<Integer, List<ErrorDTO>> validationErrors = userCreationValidator.isValidUsersForCreation(parsedRows.stream().map(UserImportReader.Row::user).toList());
+
+        List<UserImportReader.Row> validRows = new ArrayList<>(parsedRows.size());
+        for (int index = 0; index < parsedRows.size(); index++) {
+            List<ErrorDTO> errors = validationErrors.get(index);
+            if (errors == null) {
+                validRows.add(parsedRows.get(index));
+            } else {
+                rowErrors.add(new RowError(parsedRows.get(index).line(), jsonb.toJson(errors)));
+            }
+        }
+
+        // Hashed once, before storing, so the retries of a chunk that breaks a constraint do not hash them again
+        List<HashedPassword> passwords = passwordHasher.hashAll(validRows.stream().map(row -> row.user().password).toList());
+
+        long created = validRows.isEmpty() ? 0 : store(status, validRows, passwords, rowErrors);
+
+        rowErrors.sort((a, b) -> Long.compare(a.line(), b.line()));
+
+        return status.progressed(rows.size(), created, rowErrors, maxRowErrors);
+    }
+
+    /**
+     * Stores the rows in one transaction and returns how many users were created. If the transaction breaks a database constraint
+     * (usually an email taken in the meantime) the rows are split in halves and each half is stored on its own, down to single rows,
+     * so only the rows that cannot be stored are rejected and the rest of the chunk is kept. Any other failure is thrown, failing the job.
+     */
+    private long store(UserImportStatus status, List<UserImportReader.Row> rows, List<HashedPassword> passwords, List<RowError> rowErrors) {
+
+        try {
+            return userCreator.createUsers(rows.stream().map(UserImportReader.Row::user).toList(), passwords).size();
+        } catch (RuntimeException e) {
+
+            if (!isConstraintViolation(e)) {
+                throw e;
+            }
+
+            if (rows.size() == 1) {
+                LOGGER.log(Level.WARNING, TextFormatter.formatMessage("User import {0} could not store line {1}", status.jobId(), rows.get(0).line()), e);
+                rowErrors.add(new RowError(rows.get(0).line(), JsonbProvider.getJsonB().toJson(List.of(new ErrorDTO(7, "Could not store the user")))));
+                return 0;
+            }
+
+            LOGGER.log(Level.FINE, TextFormatter.formatMessage("User import {0} could not store {1} rows at once, splitting them", status.jobId(), rows.size()), e);
+
+            int half = rows.size() / 2;
+            return store(status, rows.subList(0, half), passwords.subList(0, half), rowErrors)
+                + store(status, rows.subList(half, rows.size()), passwords.subList(half, rows.size()), rowErrors);
+        }
+    }
+
+    /**
+     * Whether the failure is the fault of the rows: a bean validation constraint or a database integrity constraint (SQLState class 23),
+     * found anywhere in the causes, as the container and EclipseLink wrap it a few times over
+     */
+    static boolean isConstraintViolation(Throwable error) {
+
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+
+            if (cause instanceof ConstraintViolationException) {
+                return true;
+            }
+
+            if (cause instanceof SQLException sqlError) {
+                // A failed batch keeps the error of the statement that failed as the next exception
+                for (SQLException next = sqlError; next != null; next = next.getNextException()) {
+                    if (next.getSQLState() != null && next.getSQLState().startsWith(INTEGRITY_CONSTRAINT_VIOLATION)) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Marks the queued and running jobs of a member that left the cluster as failed. Every member is told about the departure,
+     * only the oldest one acts on it so the statuses are written once.
+     */
+    private void failJobsOf(String memberId) {
+
+        if (!hazelcast.getCluster().getMembers().iterator().next().localMember()) {
+            return;
+        }
+
+        // Few jobs are kept at a time, reading them all is cheaper than keeping an index for this
+        for (UserImportStatus status : statuses.values()) {
+            if (status.isActive() && memberId.equals(status.ownerMemberId())) {
+                LOGGER.log(Level.WARNING, TextFormatter.formatMessage("User import {0} failed, member {1} left the cluster", status.jobId(), memberId));
+                publish(status.failed(System.currentTimeMillis(), "The member running the import left the cluster"));
+            }
+        }
+    }
+
+    /**
+     * Copies the upload to the file, giving up as soon as it goes over maxBytes, whatever length was declared
+     */
+    private void spool(InputStream upload, Path file) throws IOException {
+
+        try (OutputStream output = Files.newOutputStream(file)) {
+
+            byte[] buffer = new byte[SPOOL_BUFFER_BYTES];
+            long total = 0;
+            int read;
+
+            while ((read = upload.read(buffer)) != -1) {
+                total += read;
+                if (total > maxBytes) {
+                    throw new UploadTooLargeException(maxBytes);
+                }
+                output.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private String localMemberId() {
+        return hazelcast.getCluster().getLocalMember().getUuid().toString();
+    }
+
+    private void publish(UserImportStatus status) {
+        statuses.set(status.jobId(), status, statusHours, TimeUnit.HOURS);
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, TextFormatter.formatMessage("Could not delete {0}", file), e);
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import pt.cmg.aeminium.identity.tasks.jwt.SigningAlgorithm;
+
+/**
+ * Builds the objects the tests need without a running container, the same way the benchmarks do.
+ * Whatever the container would inject is set by reflection.
+ *
+ * @author Carlos Gonçalves
+ */
+public final class TestFixtures {
+
+    private TestFixtures() {
+    }
+
+    /**
+     * A key pair and the PEM files (PKCS#8 and X.509) holding it, as the application expects them
+     */
+    public record KeyFiles(KeyPair keyPair, Path privateKey, Path publicKey) {
+    }
+
+    public static KeyFiles generateKeyFiles(SigningAlgorithm algorithm) throws IOException, GeneralSecurityException {
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm.getKeyType());
+        switch (algorithm) {
+            case RS256 -> generator.initialize(2048);
+            case ES256 -> generator.initialize(new ECGenParameterSpec("secp256r1"));
+            case EdDSA -> {
+                // Ed25519 has a single key size
+            }
+        }
+
+        KeyPair keyPair = generator.generateKeyPair();
+
+        return new KeyFiles(keyPair, writePem("PRIVATE KEY", keyPair.getPrivate().getEncoded()), writePem("PUBLIC KEY", keyPair.getPublic().getEncoded()));
+    }
+
+    private static Path writePem(String type, byte[] encodedKey) throws IOException {
+
+        String pem = "-----BEGIN " + type + "-----\n" +
+            Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(encodedKey) +
+            "\n-----END " + type + "-----\n";
+
+        Path file = Files.createTempFile("identity-test", ".pem");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, pem, StandardCharsets.US_ASCII);
+
+        return file;
+    }
+
+    public static void setField(Object target, String fieldName, Object value) {
+        try {
+            findField(target, fieldName).set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> T getField(Object target, String fieldName) {
+        try {
+            return (T) findField(target, fieldName).get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Field findField(Object target, String fieldName) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException e) {
+                // Keep looking in the superclass
+            }
+        }
+        throw new IllegalArgumentException("No field " + fieldName + " in " + target.getClass());
+    }
+
+}
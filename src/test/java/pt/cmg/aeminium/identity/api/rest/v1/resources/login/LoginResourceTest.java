@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.api.rest.v1.resources.login;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import pt.cmg.aeminium.datamodel.users.dao.identity.UserDAO;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.TestFixtures;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.login.validators.LoginValidator;
+import pt.cmg.aeminium.identity.cache.RefreshTokens;
+import pt.cmg.aeminium.identity.cache.UserClaimsCache;
+import pt.cmg.aeminium.identity.tasks.jwt.JWTokenCreator;
+import pt.cmg.aeminium.identity.tasks.login.LoginExecutor;
+import pt.cmg.aeminium.identity.tasks.login.LoginThrottle;
+import pt.cmg.jakartautils.identity.PasswordUtils;
+
+/**
+ * The database lookups a login costs: the user is loaded by email once, by {@link LoginValidator},
+ * and {@link LoginResource} reuses it instead of loading it again. It used to take two lookups.
+ *
+ * @author Carlos Gonçalves
+ */
+class LoginResourceTest {
+
+    private static final String EMAIL = "someone@aeminium.pt";
+    private static final String PASSWORD = "the-password-123";
+
+    private UserDAO userDAO;
+    private LoginThrottle loginThrottle;
+
+    private LoginResource loginResource;
+
+    @BeforeEach
+    void setUp() {
+
+        userDAO = mock(UserDAO.class);
+
+        LoginValidator loginValidator = new LoginValidator();
+        TestFixtures.setField(loginValidator, "userDAO", userDAO);
+
+        // Runs the login right away, on the calling thread
+        LoginExecutor loginExecutor = mock(LoginExecutor.class);
+        when(loginExecutor.submit(any())).thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArgument(0, Supplier.class).get()));
+
+        loginThrottle = mock(LoginThrottle.class);
+
+        JWTokenCreator jwtokenCreator = mock(JWTokenCreator.class);
+        when(jwtokenCreator.generateNewToken(any())).thenReturn("token");
+        when(jwtokenCreator.getTokenValidity()).thenReturn(Duration.ofMinutes(15));
+
+        RefreshTokens refreshTokens = mock(RefreshTokens.class);
+        when(refreshTokens.issue(any())).thenReturn("refresh-token");
+
+        UserClaimsCache userClaimsCache = new UserClaimsCache();
+        TestFixtures.setField(userClaimsCache, "maxEntries", 10);
+        TestFixtures.setField(userClaimsCache, "ttlSeconds", 300L);
+
+        loginResource = new LoginResource();
+        TestFixtures.setField(loginResource, "loginValidator", loginValidator);
+        TestFixtures.setField(loginResource, "loginExecutor", loginExecutor);
+        TestFixtures.setField(loginResource, "loginThrottle", loginThrottle);
+        TestFixtures.setField(loginResource, "jwtokenCreator", jwtokenCreator);
+        TestFixtures.setField(loginResource, "refreshTokens", refreshTokens);
+        TestFixtures.setField(loginResource, "userClaimsCache", userClaimsCache);
+    }
+
+    @Test
+    void aSuccessfulLoginLoadsTheUserOnce() {
+
+        User user = user();
+        when(userDAO.findByEmail(EMAIL)).thenReturn(user);
+
+        assertEquals(Response.Status.OK.getStatusCode(), login(EMAIL, PASSWORD).getStatus());
+
+        verify(userDAO, times(1)).findByEmail(EMAIL);
+        verifyNoMoreInteractions(userDAO);
+    }
+
+    @Test
+    void aWrongPasswordLoadsTheUserOnce() {
+
+        User user = user();
+        when(userDAO.findByEmail(EMAIL)).thenReturn(user);
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), login(EMAIL, "not-the-password").getStatus());
+
+        verify(userDAO, times(1)).findByEmail(EMAIL);
+        verifyNoMoreInteractions(userDAO);
+    }
+
+    @Test
+    void anUnknownEmailLoadsNothingElse() {
+
+        assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), login("nobody@aeminium.pt", PASSWORD).getStatus());
+
+        verify(userDAO, times(1)).findByEmail("nobody@aeminium.pt");
+        verifyNoMoreInteractions(userDAO);
+    }
+
+    @Test
+    void aThrottledLoginLoadsNothing() {
+
+        when(loginThrottle.tryAcquire(anyString(), anyString())).thenReturn(30L);
+
+        assertEquals(Response.Status.TOO_MANY_REQUESTS.getStatusCode(), login(EMAIL, PASSWORD).getStatus());
+
+        verifyNoInteractions(userDAO);
+    }
+
+    private Response login(String email, String password) {
+
+        String credentials = Base64.getEncoder().encodeToString((email + ":" + password).getBytes(StandardCharsets.UTF_8));
+
+        HttpHeaders headers = mock(HttpHeaders.class);
+        when(headers.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn("Basic " + credentials);
+
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getRemoteAddr()).thenReturn("10.0.0.1");
+
+        return loginResource.login(headers, request).toCompletableFuture().join();
+    }
+
+    private static User user() {
+
+        String salt = PasswordUtils.generateSalt();
+
+        User user = mock(User.class);
+        when(user.getId()).thenReturn(7L);
+        when(user.getEmail()).thenReturn(EMAIL);
+        when(user.getName()).thenReturn("Someone");
+        when(user.getRolesAsStrings()).thenReturn(List.of("SCHOLAR"));
+        when(user.getSalt()).thenReturn(salt);
+        when(user.getPassword()).thenReturn(PasswordUtils.generateSaltedPassword(salt, PASSWORD));
+
+        return user;
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import jakarta.enterprise.concurrent.ManagedThreadFactory;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import pt.cmg.aeminium.datamodel.common.entities.localisation.Country;
+import pt.cmg.aeminium.identity.TestFixtures;
+
+/**
+ * The startup warmup of {@link ObjectCacheLoader}: a failed load is tried again until the cache is ready.
+ *
+ * @author Carlos Gonçalves
+ */
+class ObjectCacheLoaderTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private EntityManagerFactory entityManagerFactory;
+
+    private ObjectCacheLoader loader;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+
+        // No countries, so there are no texts to load either
+        TypedQuery<Country> countries = mock(TypedQuery.class);
+        when(countries.getResultList()).thenReturn(List.of());
+
+        EntityManager database = mock(EntityManager.class);
+        when(database.createNamedQuery(anyString(), any(Class.class))).thenReturn(countries);
+
+        entityManagerFactory = mock(EntityManagerFactory.class);
+        when(entityManagerFactory.createEntityManager()).thenReturn(database);
+
+        ThreadFactory threads = Executors.defaultThreadFactory();
+        ManagedThreadFactory threadFactory = mock(ManagedThreadFactory.class);
+        when(threadFactory.newThread(any(Runnable.class))).thenAnswer(invocation -> threads.newThread(invocation.getArgument(0, Runnable.class)));
+
+        loader = new ObjectCacheLoader();
+        TestFixtures.setField(loader, "entityManagerFactory", entityManagerFactory);
+        TestFixtures.setField(loader, "threadFactory", threadFactory);
+        TestFixtures.setField(loader, "loadCacheAtStartup", true);
+        TestFixtures.setField(loader, "warmupThreads", 2);
+        TestFixtures.setField(loader, "warmupChunkSize", 1000);
+        TestFixtures.setField(loader, "warmupRetrySeconds", 1L);
+        TestFixtures.setField(loader, "warmupMaxRetrySeconds", 1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        loader.shutdownWarmup();
+    }
+
+    @Test
+    void theCacheIsReadyOnceLoaded() throws InterruptedException {
+
+        loader.loadCacheAtStartup();
+
+        assertTrue(waitFor(loader::isCacheReady));
+        assertEquals(CacheWarmupProgress.Stage.DONE, loader.getWarmupProgress().getStage());
+    }
+
+    @Test
+    void aFailedWarmupIsTriedAgainUntilItLoads() throws InterruptedException {
+
+        EntityManager database = entityManagerFactory.createEntityManager();
+        // The database is down for the first two attempts
+        when(entityManagerFactory.createEntityManager())
+            .thenThrow(new IllegalStateException("Connection refused"))
+            .thenThrow(new IllegalStateException("Connection refused"))
+            .thenReturn(database);
+
+        loader.loadCacheAtStartup();
+
+        assertTrue(waitFor(() -> loader.getWarmupProgress().getStage() == CacheWarmupProgress.Stage.FAILED));
+        assertFalse(loader.isCacheReady());
+
+        assertTrue(waitFor(loader::isCacheReady));
+        assertEquals(CacheWarmupProgress.Stage.DONE, loader.getWarmupProgress().getStage());
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+
+        return true;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.TestFixtures;
+
+/**
+ * When {@link UserClaimsCache} keeps the claims it builds, and for how long.
+ *
+ * @author Carlos Gonçalves
+ */
+class UserClaimsCacheTest {
+
+    private UserClaimsCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new UserClaimsCache();
+        TestFixtures.setField(cache, "maxEntries", 10);
+        TestFixtures.setField(cache, "ttlSeconds", 300L);
+    }
+
+    @Test
+    void claimsAreBuiltOnceAndThenServedFromMemory() {
+
+        User user = user(7L, List.of("GOD"));
+
+        assertSame(cache.getClaims(user), cache.getClaims(user));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void expiredClaimsAreBuiltAgain() {
+
+        TestFixtures.setField(cache, "ttlSeconds", 0L);
+        User user = user(7L, List.of("GOD"));
+
+        cache.getClaims(user);
+        when(user.getRolesAsStrings()).thenReturn(List.of("SCHOLAR"));
+
+        assertEquals(List.of("SCHOLAR"), cache.getClaims(user).groups());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void claimsInvalidatedWhileBeingBuiltAreNotKept() {
+
+        User user = user(7L, List.of("GOD"));
+        // The user is changed elsewhere while its roles are read
+        when(user.getRolesAsStrings()).thenAnswer(invocation -> {
+            cache.invalidate(7L);
+            return List.of("GOD");
+        });
+
+        cache.getClaims(user);
+
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void invalidatedClaimsAreBuiltAgain() {
+
+        User user = user(7L, List.of("GOD"));
+        cache.getClaims(user);
+
+        cache.invalidate(7L);
+        when(user.getRolesAsStrings()).thenReturn(List.of("SCHOLAR"));
+
+        assertEquals(List.of("SCHOLAR"), cache.getClaims(user).groups());
+    }
+
+    @Test
+    void usersWithTheSameRolesShareTheirGroups() {
+        assertSame(cache.getClaims(user(7L, List.of("GOD", "SCHOLAR"))).groups(), cache.getClaims(user(8L, List.of("GOD", "SCHOLAR"))).groups());
+    }
+
+    @Test
+    void theCacheIsBounded() {
+
+        for (long userId = 1; userId <= 25; userId++) {
+            cache.getClaims(user(userId, List.of("SCHOLAR")));
+        }
+
+        assertEquals(10, cache.getSize());
+    }
+
+    private static User user(Long userId, List<String> groups) {
+        User user = mock(User.class);
+        when(user.getId()).thenReturn(userId);
+        when(user.getName()).thenReturn("User " + userId);
+        when(user.getRolesAsStrings()).thenReturn(groups);
+        return user;
+    }
+
+}
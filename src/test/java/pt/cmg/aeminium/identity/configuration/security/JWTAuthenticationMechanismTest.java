@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.configuration.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.security.Principal;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import jakarta.security.enterprise.AuthenticationStatus;
+import jakarta.security.enterprise.authentication.mechanism.http.HttpMessageContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.ws.rs.core.HttpHeaders;
+import pt.cmg.aeminium.identity.TestFixtures;
+import pt.cmg.aeminium.identity.cache.RevokedTokens;
+import pt.cmg.aeminium.identity.cache.UserStatusCache;
+import pt.cmg.aeminium.identity.cache.VerifiedTokenCache;
+import pt.cmg.aeminium.identity.tasks.jwt.VerifiedToken;
+
+/**
+ * Which requests {@link JWTAuthenticationMechanism} logs in, turns away or leaves anonymous, and with which groups.
+ *
+ * @author Carlos Gonçalves
+ */
+class JWTAuthenticationMechanismTest {
+
+    private static final String RAW_TOKEN = "header.claims.signature";
+
+    private VerifiedTokenCache verifiedTokenCache;
+    private RevokedTokens revokedTokens;
+    private UserStatusCache userStatusCache;
+
+    private JWTAuthenticationMechanism mechanism;
+
+    private HttpServletRequest request;
+    private HttpMessageContext messageContext;
+
+    @BeforeEach
+    void setUp() {
+
+        verifiedTokenCache = mock(VerifiedTokenCache.class);
+        revokedTokens = mock(RevokedTokens.class);
+        userStatusCache = mock(UserStatusCache.class);
+
+        mechanism = new JWTAuthenticationMechanism();
+        TestFixtures.setField(mechanism, "verifiedTokenCache", verifiedTokenCache);
+        TestFixtures.setField(mechanism, "revokedTokens", revokedTokens);
+        TestFixtures.setField(mechanism, "userStatusCache", userStatusCache);
+
+        request = mock(HttpServletRequest.class);
+
+        messageContext = mock(HttpMessageContext.class);
+        when(messageContext.doNothing()).thenReturn(AuthenticationStatus.NOT_DONE);
+        when(messageContext.responseUnauthorized()).thenReturn(AuthenticationStatus.SEND_FAILURE);
+        when(messageContext.notifyContainerAboutLogin(any(Principal.class), any())).thenReturn(AuthenticationStatus.SUCCESS);
+    }
+
+    @Test
+    void requestsWithoutABearerTokenStayAnonymous() {
+
+        assertEquals(AuthenticationStatus.NOT_DONE, validate(null));
+        assertEquals(AuthenticationStatus.NOT_DONE, validate("Basic dXNlcjpwYXNz"));
+
+        verify(verifiedTokenCache, never()).verify(anyString());
+    }
+
+    @Test
+    void invalidTokensAreUnauthorized() {
+
+        when(verifiedTokenCache.verify(RAW_TOKEN)).thenReturn(Optional.empty());
+
+        assertEquals(AuthenticationStatus.SEND_FAILURE, validate("Bearer " + RAW_TOKEN));
+        verify(messageContext, never()).notifyContainerAboutLogin(any(Principal.class), any());
+    }
+
+    @Test
+    void revokedTokensAreUnauthorized() {
+
+        token("7", "jti-1", Set.of("GOD"));
+        when(revokedTokens.isRevoked("jti-1")).thenReturn(true);
+        when(userStatusCache.canAuthenticate(7L)).thenReturn(true);
+
+        assertEquals(AuthenticationStatus.SEND_FAILURE, validate("Bearer " + RAW_TOKEN));
+        verify(messageContext, never()).notifyContainerAboutLogin(any(Principal.class), any());
+    }
+
+    @Test
+    void tokensOfUsersThatCannotAuthenticateAreUnauthorized() {
+
+        token("7", "jti-1", Set.of("GOD"));
+        when(userStatusCache.canAuthenticate(7L)).thenReturn(false);
+
+        assertEquals(AuthenticationStatus.SEND_FAILURE, validate("Bearer " + RAW_TOKEN));
+        verify(messageContext, never()).notifyContainerAboutLogin(any(Principal.class), any());
+    }
+
+    @Test
+    void validTokensLogInWithTheirGroups() {
+
+        VerifiedToken token = token("7", "jti-1", Set.of("GOD", "SCHOLAR"));
+        when(userStatusCache.canAuthenticate(7L)).thenReturn(true);
+
+        // The scheme is case insensitive
+        assertEquals(AuthenticationStatus.SUCCESS, validate("bearer " + RAW_TOKEN));
+        verify(messageContext).notifyContainerAboutLogin(token, Set.of("GOD", "SCHOLAR"));
+    }
+
+    private AuthenticationStatus validate(String authorization) {
+        when(request.getHeader(HttpHeaders.AUTHORIZATION)).thenReturn(authorization);
+        return mechanism.validateRequest(request, mock(HttpServletResponse.class), messageContext);
+    }
+
+    private VerifiedToken token(String subject, String tokenId, Set<String> groups) {
+
+        VerifiedToken token = mock(VerifiedToken.class);
+        when(token.getSubject()).thenReturn(subject);
+        when(token.getTokenID()).thenReturn(tokenId);
+        when(token.getGroups()).thenReturn(groups);
+
+        when(verifiedTokenCache.verify(RAW_TOKEN)).thenReturn(Optional.of(token));
+        return token;
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.configuration.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import java.lang.reflect.Method;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import jakarta.annotation.security.DenyAll;
+import jakarta.annotation.security.PermitAll;
+import jakarta.annotation.security.RolesAllowed;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.FeatureContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.SecurityContext;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.UserImportResource;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.UserResource;
+
+/**
+ * The 401/403/200 outcomes of the resource methods, as {@link RolesAllowedFeature} sets them up.
+ * A request that is let through (200) is one that is not aborted.
+ *
+ * @author Carlos Gonçalves
+ */
+class RolesAllowedFeatureTest {
+
+    @RolesAllowed({"GOD", "SCHOLAR"})
+    static class ProtectedResource {
+
+        public void byClass() {
+        }
+
+        @PermitAll
+        public void open() {
+        }
+
+        @RolesAllowed("GOD")
+        public void godOnly() {
+        }
+
+        @DenyAll
+        public void closed() {
+        }
+    }
+
+    static class UnannotatedResource {
+
+        public void anything() {
+        }
+    }
+
+    private static final Principal CALLER = () -> "1";
+
+    @Test
+    void anonymousCallersGet401() {
+
+        Response response = call(filterFor(ProtectedResource.class, "byClass"), null, Set.of());
+
+        assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), response.getStatus());
+        assertEquals("Bearer", response.getHeaderString(HttpHeaders.WWW_AUTHENTICATE));
+    }
+
+    @Test
+    void callersWithoutTheRoleGet403() {
+        Response response = call(filterFor(ProtectedResource.class, "byClass"), CALLER, Set.of("CITIZEN"));
+        assertEquals(Response.Status.FORBIDDEN.getStatusCode(), response.getStatus());
+    }
+
+    @Test
+    void callersWithOneOfTheRolesAreLetThrough() {
+        assertNull(call(filterFor(ProtectedResource.class, "byClass"), CALLER, Set.of("SCHOLAR")));
+        assertNull(call(filterFor(ProtectedResource.class, "byClass"), CALLER, Set.of("GOD")));
+    }
+
+    @Test
+    void methodRolesWinOverTheClassOnes() {
+
+        RolesAllowedRequestFilter filter = filterFor(ProtectedResource.class, "godOnly");
+
+        assertEquals(Response.Status.FORBIDDEN.getStatusCode(), call(filter, CALLER, Set.of("SCHOLAR")).getStatus());
+        assertNull(call(filter, CALLER, Set.of("GOD")));
+    }
+
+    @Test
+    void permitAllIsNotFiltered() {
+        assertNull(filterFor(ProtectedResource.class, "open"));
+        assertNull(filterFor(UnannotatedResource.class, "anything"));
+    }
+
+    @Test
+    void denyAllGets403EvenWithTheRoles() {
+        assertEquals(Response.Status.FORBIDDEN.getStatusCode(), call(filterFor(ProtectedResource.class, "closed"), CALLER, Set.of("GOD")).getStatus());
+    }
+
+    @Test
+    void everyImportEndpointIsProtected() {
+
+        Method[] methods = resourceMethods(UserImportResource.class);
+        assertTrue(methods.length > 0);
+
+        for (Method method : methods) {
+            RolesAllowedRequestFilter filter = filterFor(UserImportResource.class, method);
+            assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), call(filter, null, Set.of()).getStatus(), method.getName());
+            assertEquals(Response.Status.FORBIDDEN.getStatusCode(), call(filter, CALLER, Set.of("CITIZEN")).getStatus(), method.getName());
+            assertNull(call(filter, CALLER, Set.of("SCHOLAR")), method.getName());
+        }
+    }
+
+    @Test
+    void userEndpointsKeepTheirRoles() {
+
+        RolesAllowedRequestFilter getUser = filterFor(UserResource.class, "getUser");
+        assertEquals(Response.Status.UNAUTHORIZED.getStatusCode(), call(getUser, null, Set.of()).getStatus());
+        assertEquals(Response.Status.FORBIDDEN.getStatusCode(), call(getUser, CALLER, Set.of("CITIZEN")).getStatus());
+        assertNull(call(getUser, CALLER, Set.of("GOD")));
+
+        // Editing a user is checked by UserValidator instead
+        assertNull(filterFor(UserResource.class, "editUser"));
+    }
+
+    private static RolesAllowedRequestFilter filterFor(Class<?> resourceClass, String methodName) {
+        return filterFor(resourceClass, Arrays.stream(resourceClass.getDeclaredMethods()).filter(method -> method.getName().equals(methodName)).findFirst().orElseThrow());
+    }
+
+    /**
+     * The filter the feature registers for the method, or null if it registers none
+     */
+    private static RolesAllowedRequestFilter filterFor(Class<?> resourceClass, Method method) {
+
+        ResourceInfo resourceInfo = mock(ResourceInfo.class);
+        when(resourceInfo.getResourceMethod()).thenReturn(method);
+        when(resourceInfo.<Class<?>>getResourceClass()).thenAnswer(invocation -> resourceClass);
+
+        FeatureContext context = mock(FeatureContext.class);
+        new RolesAllowedFeature().configure(resourceInfo, context);
+
+        ArgumentCaptor<Object> registered = ArgumentCaptor.forClass(Object.class);
+        verify(context, atMost(1)).register(registered.capture());
+
+        return registered.getAllValues().isEmpty() ? null : (RolesAllowedRequestFilter) registered.getValue();
+    }
+
+    /**
+     * Runs the filter for a caller with the roles, returns the response it aborted with or null if it let the request through
+     */
+    private static Response call(RolesAllowedRequestFilter filter, Principal caller, Set<String> roles) {
+
+        SecurityContext securityContext = mock(SecurityContext.class);
+        when(securityContext.getUserPrincipal()).thenReturn(caller);
+        when(securityContext.isUserInRole(anyString())).thenAnswer(invocation -> caller != null && roles.contains(invocation.getArgument(0, String.class)));
+
+        ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+        when(requestContext.getSecurityContext()).thenReturn(securityContext);
+
+        filter.filter(requestContext);
+
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        verify(requestContext, atMost(1)).abortWith(response.capture());
+
+        return response.getAllValues().isEmpty() ? null : response.getValue();
+    }
+
+    private static Method[] resourceMethods(Class<?> resourceClass) {
+        return Arrays.stream(resourceClass.getDeclaredMethods())
+            .filter(method -> method.isAnnotationPresent(GET.class) || method.isAnnotationPresent(POST.class) || method.isAnnotationPresent(PUT.class))
+            .toArray(Method[]::new);
+    }
+
+}
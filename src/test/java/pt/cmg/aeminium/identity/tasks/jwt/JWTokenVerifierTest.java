@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.jwt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.eclipse.microprofile.jwt.Claims;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import pt.cmg.aeminium.identity.TestFixtures;
+import pt.cmg.aeminium.identity.TestFixtures.KeyFiles;
+
+/**
+ * {@link JWTokenVerifier} against jjwt, a reference implementation: the tokens each one signs must pass the other,
+ * and everything a MicroProfile JWT verifier turns away must be turned away as well.
+ *
+ * @author Carlos Gonçalves
+ */
+class JWTokenVerifierTest {
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+
+    private static final UserClaims USER = new UserClaims(7L, "Jason D. Frank", List.of("GOD", "SCHOLAR"));
+
+    /**
+     * The keys, the token creator and the verifier of one algorithm, wired as the container would
+     */
+    private record Setup(KeyFiles keyFiles, PublicKeys publicKeys, JWTokenCreator creator, JWTokenVerifier verifier) {
+
+        static Setup of(SigningAlgorithm algorithm, KeyFiles... additionalKeys) throws Exception {
+
+            KeyFiles keyFiles = TestFixtures.generateKeyFiles(algorithm);
+
+            PublicKeys publicKeys = new PublicKeys();
+            TestFixtures.setField(publicKeys, "signingAlgorithm", algorithm);
+            TestFixtures.setField(publicKeys, "primaryKeyLocation", keyFiles.publicKey().toString());
+            TestFixtures.setField(publicKeys, "additionalKeyLocations", Optional.of(List.of(additionalKeys).stream().map(keys -> keys.publicKey().toString()).toList()));
+            publicKeys.loadKeys();
+
+            JWTokenCreator creator = new JWTokenCreator();
+            TestFixtures.setField(creator, "publicKeys", publicKeys);
+            TestFixtures.setField(creator, "tokenValidityMinutes", 15L);
+            TestFixtures.setField(creator, "privateKeyLocation", keyFiles.privateKey().toString());
+            creator.loadPrivateKey();
+
+            JWTokenVerifier verifier = new JWTokenVerifier();
+            TestFixtures.setField(verifier, "publicKeys", publicKeys);
+            TestFixtures.setField(verifier, "issuer", JWTokenCreator.ISSUER);
+            TestFixtures.setField(verifier, "clockSkewSeconds", 60L);
+
+            return new Setup(keyFiles, publicKeys, creator, verifier);
+        }
+
+        String referenceToken(String keyId, String issuer, Instant issuedAt, Duration validity) {
+            return referenceToken(keyFiles.keyPair().getPrivate(), keyId, issuer, issuedAt, validity);
+        }
+
+        String referenceToken(PrivateKey privateKey, String keyId, String issuer, Instant issuedAt, Duration validity) {
+            return Jwts.builder()
+                .header().add("typ", "JWT").keyId(keyId).and()
+                .claim(Claims.upn.name(), USER.name())
+                .subject(USER.userId().toString())
+                .issuer(issuer)
+                .id(JWTokenCreator.newTokenId())
+                .issuedAt(Date.from(issuedAt))
+                .expiration(Date.from(issuedAt.plus(validity)))
+                .claim(Claims.groups.name(), USER.groups())
+                .signWith(privateKey, jjwtAlgorithm(publicKeys.getSigningAlgorithm()))
+                .compact();
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(SigningAlgorithm.class)
+    void tokensOfTheCreatorAreAccepted(SigningAlgorithm algorithm) throws Exception {
+
+        Setup setup = Setup.of(algorithm);
+        String tokenId = JWTokenCreator.newTokenId();
+
+        VerifiedToken token = setup.verifier().verify(setup.creator().generateNewToken(USER, Instant.now(), tokenId)).orElseThrow();
+
+        assertEquals("7", token.getSubject());
+        assertEquals("Jason D. Frank", token.getName());
+        assertEquals(tokenId, token.getTokenID());
+        assertEquals(JWTokenCreator.ISSUER, token.getIssuer());
+        assertEquals(Set.of("GOD", "SCHOLAR"), token.getGroups());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SigningAlgorithm.class)
+    void tokensOfTheReferenceImplementationAreAccepted(SigningAlgorithm algorithm) throws Exception {
+
+        Setup setup = Setup.of(algorithm);
+
+        String token = setup.referenceToken(setup.publicKeys().getPrimaryKeyId(), JWTokenCreator.ISSUER, Instant.now(), Duration.ofMinutes(15));
+
+        assertEquals(Set.of("GOD", "SCHOLAR"), setup.verifier().verify(token).orElseThrow().getGroups());
+    }
+
+    @ParameterizedTest
+    @EnumSource(SigningAlgorithm.class)
+    void tokensOfTheCreatorPassTheReferenceImplementation(SigningAlgorithm algorithm) throws Exception {
+
+        Setup setup = Setup.of(algorithm);
+
+        io.jsonwebtoken.Claims claims = Jwts.parser()
+            .verifyWith(setup.keyFiles().keyPair().getPublic())
+            .requireIssuer(JWTokenCreator.ISSUER)
+            .build()
+            .parseSignedClaims(setup.creator().generateNewToken(USER))
+            .getPayload();
+
+        assertEquals("7", claims.getSubject());
+        assertEquals(List.of("GOD", "SCHOLAR"), claims.get(Claims.groups.name(), List.class));
+    }
+
+    @Test
+    void tokensWithTamperedClaimsAreRejected() throws Exception {
+
+        Setup setup = Setup.of(SigningAlgorithm.RS256);
+        String[] parts = setup.creator().generateNewToken(new UserClaims(8L, "Someone", List.of())).split("\\.");
+
+        String claims = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8).replace("\"sub\":\"8\"", "\"sub\":\"7\"");
+        String tampered = parts[0] + '.' + BASE64_URL.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + '.' + parts[2];
+
+        assertTrue(setup.verifier().verify(tampered).isEmpty());
+    }
+
+    @Test
+    void tokensSignedWithAnotherKeyAreRejected() throws Exception {
+
+        Setup setup = Setup.of(SigningAlgorithm.RS256);
+        PrivateKey otherKey = TestFixtures.generateKeyFiles(SigningAlgorithm.RS256).keyPair().getPrivate();
+
+        // Even claiming to be signed with our key
+        String token = setup.referenceToken(otherKey, setup.publicKeys().getPrimaryKeyId(), JWTokenCreator.ISSUER, Instant.now(), Duration.ofMinutes(15));
+
+        assertTrue(setup.verifier().verify(token).isEmpty());
+    }
+
+    @Test
+    void tokensOfUnknownKeysAreRejected() throws Exception {
+
+        Setup setup = Setup.of(SigningAlgorithm.RS256);
+
+        assertTrue(setup.verifier().verify(setup.referenceToken("unknown", JWTokenCreator.ISSUER, Instant.now(), Duration.ofMinutes(15))).isEmpty());
+    }
+
+    @Test
+    void tokensOfAnAdditionalKeyAreAccepted() throws Exception {
+
+        // A key rotation: the new key is published first, so tokens signed with it are accepted everywhere when it becomes the primary one
+        Setup newKeySetup = Setup.of(SigningAlgorithm.ES256);
+        Setup setup = Setup.of(SigningAlgorithm.ES256, newKeySetup.keyFiles());
+
+        String token = newKeySetup.creator().generateNewToken(USER);
+
+        assertTrue(setup.verifier().verify(token).isPresent());
+    }
+
+    @Test
+    void tokensWithAnotherAlgorithmAreRejected() throws Exception {
+
+        Setup setup = Setup.of(SigningAlgorithm.RS256);
+        String[] parts = setup.creator().generateNewToken(USER).split("\\.");
+
+        // "none" and a MAC keyed with the public key are the classic attacks, both must be turned away before looking at the signature
+        String none = encodedHeader("none", setup.publicKeys().getPrimaryKeyId()) + '.' + parts[1] + '.';
+        String hmac = Jwts.builder()
+            .header().keyId(setup.publicKeys().getPrimaryKeyId()).and()
+            .subject("7")
+            .issuer(JWTokenCreator.ISSUER)
+            .expiration(Date.from(Instant.now().plusSeconds(600)))
+            .signWith(Jwts.SIG.HS256.key().build())
+            .compact();
+
+        assertTrue(setup.verifier().verify(none).isEmpty());
+        assertTrue(setup.verifier().verify(hmac).isEmpty());
+    }
+
+    @Test
+    void tokensOfAnotherIssuerAreRejected() throws Exception {
+
+        Setup setup = Setup.of(SigningAlgorithm.RS256);
+
+        assertTrue(setup.verifier().verify(setup.referenceToken(setup.publicKeys().getPrimaryKeyId(), "someone-else", Instant.now(), Duration.ofMinutes(15))).isEmpty());
+    }
+
+    @Test
+    void expiredTokensAreRejectedAfterTheClockSkew() throws Exception {
+
+        Setup setup = Setup.of(SigningAlgorithm.RS256);
+        Instant now = Instant.now();
+
+        // Expired 30 seconds ago, within the 60 seconds of skew
+        assertTrue(setup.verifier().verify(setup.creator().generateNewToken(USER, now.minus(Duration.ofMinutes(15)).minusSeconds(30), JWTokenCreator.newTokenId())).isPresent());
+
+        // Expired 2 minutes ago
+        assertTrue(setup.verifier().verify(setup.creator().generateNewToken(USER, now.minus(Duration.ofMinutes(17)), JWTokenCreator.newTokenId())).isEmpty());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "abc", "a.b", "a.b.c.d", "!!!.???.###", "e30.e30.e30"})
+    void malformedTokensAreRejected(String rawToken) throws Exception {
+        assertTrue(Setup.of(SigningAlgorithm.RS256).verifier().verify(rawToken).isEmpty());
+    }
+
+    private static String encodedHeader(String algorithm, String keyId) {
+        String header = "{\"typ\":\"JWT\",\"kid\":\"" + keyId + "\",\"alg\":\"" + algorithm + "\"}";
+        return BASE64_URL.encodeToString(header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static SignatureAlgorithm jjwtAlgorithm(SigningAlgorithm algorithm) {
+        return switch (algorithm) {
+            case RS256 -> Jwts.SIG.RS256;
+            case ES256 -> Jwts.SIG.ES256;
+            case EdDSA -> Jwts.SIG.EdDSA;
+        };
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.lang.reflect.Constructor;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.jpa.PersistenceProvider;
+import org.eclipse.persistence.queries.Call;
+import org.eclipse.persistence.internal.databaseaccess.DatabaseCall;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.SharedCacheMode;
+import jakarta.persistence.ValidationMode;
+import jakarta.persistence.spi.ClassTransformer;
+import jakarta.persistence.spi.PersistenceUnitInfo;
+import jakarta.persistence.spi.PersistenceUnitTransactionType;
+import pt.cmg.aeminium.datamodel.common.entities.localisation.Language;
+import pt.cmg.aeminium.datamodel.users.entities.identity.Role;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.TestFixtures;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.converters.UserConverter;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.SearchUsersFilterDTO;
+
+/**
+ * The SQL statements a user list costs, against a PostgreSQL container: a fixed number per page, however many users are on it.
+ * Statements are counted as EclipseLink sends them, so batch fetches and lazy loads are all counted.
+ * <br>
+ * The entities come from the datamodel jars, and the schema is generated from their mappings. Skipped when there is no Docker.
+ *
+ * @author Carlos Gonçalves
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class UserFinderQueryCountTest {
+
+    private static final int USERS = 30;
+
+    private static final int EXPORT_FETCH_SIZE = 10;
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private static EntityManagerFactory entityManagerFactory;
+
+    private static final SqlCounter SQL = new SqlCounter();
+
+    private EntityManager database;
+
+    private UserFinder userFinder;
+
+    /**
+     * Counts the SQL statements sent to the database, and keeps them for the failure messages
+     */
+    private static class SqlCounter extends SessionEventAdapter {
+
+        private final AtomicLong statements = new AtomicLong();
+        private final List<String> sql = new ArrayList<>();
+
+        @Override
+        public synchronized void postExecuteCall(SessionEvent event) {
+            statements.incrementAndGet();
+            Call call = event.getCall();
+            sql.add(call instanceof DatabaseCall databaseCall ? databaseCall.getSQLString() : String.valueOf(call));
+        }
+
+        synchronized void reset() {
+            statements.set(0);
+            sql.clear();
+        }
+
+        synchronized long count() {
+            return statements.get();
+        }
+
+        synchronized List<String> statements() {
+            return List.copyOf(sql);
+        }
+    }
+
+    /**
+     * The persistence unit of the application, resource local and with the shared cache off, so every read goes to the database
+     */
+    private record DatamodelUnit(DataSource dataSource, List<URL> jarFileUrls, Properties properties) implements PersistenceUnitInfo {
+
+        @Override
+        public String getPersistenceUnitName() {
+            return "aem-data";
+        }
+
+        @Override
+        public String getPersistenceProviderClassName() {
+            return PersistenceProvider.class.getName();
+        }
+
+        @Override
+        public PersistenceUnitTransactionType getTransactionType() {
+            return PersistenceUnitTransactionType.RESOURCE_LOCAL;
+        }
+
+        @Override
+        public DataSource getJtaDataSource() {
+            return null;
+        }
+
+        @Override
+        public DataSource getNonJtaDataSource() {
+            return dataSource;
+        }
+
+        @Override
+        public List<String> getMappingFileNames() {
+            return List.of();
+        }
+
+        @Override
+        public List<URL> getJarFileUrls() {
+            return jarFileUrls;
+        }
+
+        @Override
+        public URL getPersistenceUnitRootUrl() {
+            return jarFileUrls.get(0);
+        }
+
+        @Override
+        public List<String> getManagedClassNames() {
+            return List.of();
+        }
+
+        @Override
+        public boolean excludeUnlistedClasses() {
+            return false;
+        }
+
+        @Override
+        public SharedCacheMode getSharedCacheMode() {
+            return SharedCacheMode.NONE;
+        }
+
+        @Override
+        public ValidationMode getValidationMode() {
+            return ValidationMode.NONE;
+        }
+
+        @Override
+        public Properties getProperties() {
+            return properties;
+        }
+
+        @Override
+        public String getPersistenceXMLSchemaVersion() {
+            return "3.0";
+        }
+
+        @Override
+        public ClassLoader getClassLoader() {
+            return UserFinderQueryCountTest.class.getClassLoader();
+        }
+
+        @Override
+        public void addTransformer(ClassTransformer transformer) {
+            // No weaving, lazy collections work without it
+        }
+
+        @Override
+        public ClassLoader getNewTempClassLoader() {
+            return getClassLoader();
+        }
+    }
+
+    @BeforeAll
+    static void createDatabase() throws ReflectiveOperationException {
+
+        PGSimpleDataSource dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(POSTGRES.getJdbcUrl());
+        dataSource.setUser(POSTGRES.getUsername());
+        dataSource.setPassword(POSTGRES.getPassword());
+
+        Properties properties = new Properties();
+        properties.setProperty("jakarta.persistence.schema-generation.database.action", "drop-and-create");
+        properties.setProperty("eclipselink.weaving", "false");
+        // As in persistence.xml
+        properties.setProperty("eclipselink.jdbc.batch-writing", "JDBC");
+        properties.setProperty("eclipselink.jdbc.batch-writing.size", "100");
+
+        List<URL> datamodelJars = List.of(
+            User.class.getProtectionDomain().getCodeSource().getLocation(),
+            Language.class.getProtectionDomain().getCodeSource().getLocation());
+
+        entityManagerFactory = new PersistenceProvider().createContainerEntityManagerFactory(new DatamodelUnit(dataSource, datamodelJars, properties), Map.of());
+        JpaHelper.getServerSession(entityManagerFactory).getEventManager().addListener(SQL);
+
+        insertUsers();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        if (entityManagerFactory != null) {
+            entityManagerFactory.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+
+        database = entityManagerFactory.createEntityManager();
+
+        userFinder = new UserFinder();
+        TestFixtures.setField(userFinder, "database", database);
+        TestFixtures.setField(userFinder, "exportFetchSize", EXPORT_FETCH_SIZE);
+
+        SQL.reset();
+    }
+
+    /**
+     * The offset path: UserDAO reads the page, then {@link UserFinder#findRoles(List)} reads the roles of all of it at once
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {5, USERS})
+    void anOffsetPageReadsItsRolesInOneQuery(int size) {
+
+        List<User> page = database.createQuery("select u from User u order by u.id", User.class).setFirstResult(0).setMaxResults(size).getResultList();
+        SQL.reset();
+
+        var users = UserConverter.toUsersDTO(page, userFinder.findRoles(page));
+
+        assertEquals(size, users.size());
+        assertEquals(1, SQL.count(), SQL.statements()::toString);
+    }
+
+    /**
+     * The keyset path: the page and then the roles of all of it, batch fetched
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {5, USERS})
+    void aKeysetPageCostsTwoQueries(int size) {
+
+        var users = UserConverter.toUsersDTO(userFinder.findPage(new SearchUsersFilterDTO(), UserCursor.FIRST, size));
+
+        assertEquals(size, users.size());
+        assertEquals(2, SQL.count(), SQL.statements()::toString);
+    }
+
+    @Test
+    void theEmailFilterMatchesTheStoredEmail() {
+
+        SearchUsersFilterDTO filter = new SearchUsersFilterDTO();
+        filter.email = " User.7@Aeminium.PT ";
+
+        var users = UserConverter.toUsersDTO(userFinder.findPage(filter, UserCursor.FIRST, 10));
+
+        assertEquals(1, users.size());
+        assertEquals(2, SQL.count(), SQL.statements()::toString);
+        // A plain comparison, so the email index can be used
+        assertTrue(SQL.statements().stream().noneMatch(sql -> sql.toUpperCase().contains("LOWER(")), SQL.statements()::toString);
+    }
+
+    @Test
+    void existingEmailsAreFoundInOneQuery() {
+
+        Set<String> existing = userFinder.findExistingEmails(List.of("USER.1@aeminium.pt", "user.2@aeminium.pt", "nobody@aeminium.pt"));
+
+        assertEquals(Set.of("user.1@aeminium.pt", "user.2@aeminium.pt"), existing);
+        assertEquals(1, SQL.count(), SQL.statements()::toString);
+        assertTrue(SQL.statements().stream().noneMatch(sql -> sql.toUpperCase().contains("LOWER(")), SQL.statements()::toString);
+    }
+
+    /**
+     * The export: one cursor for the users, and the roles of each batch the cursor fetches in one query
+     */
+    @Test
+    void anExportCostsOneQueryPerBatch() {
+
+        List<Integer> roleCounts = new ArrayList<>();
+
+        database.getTransaction().begin();
+        try {
+            userFinder.forEachUser(new SearchUsersFilterDTO(), user -> roleCounts.add(user.getRolesAsStrings().size()));
+        } finally {
+            database.getTransaction().rollback();
+        }
+
+        assertEquals(USERS, roleCounts.size());
+        assertEquals(1 + USERS / EXPORT_FETCH_SIZE, SQL.count(), SQL.statements()::toString);
+    }
+
+    /**
+     * Every user is a scholar, and every third one a god as well
+     */
+    private static void insertUsers() throws ReflectiveOperationException {
+
+        EntityManager database = entityManagerFactory.createEntityManager();
+        database.getTransaction().begin();
+
+        Role god = newRole(Role.Name.GOD);
+        Role scholar = newRole(Role.Name.SCHOLAR);
+        database.persist(god);
+        database.persist(scholar);
+
+        for (int i = 1; i <= USERS; i++) {
+
+            User user = new User();
+            user.setName("User " + i);
+            user.setEmail("user." + i + "@aeminium.pt");
+            user.setLanguage(Language.DEFAULT_LANGUAGE);
+            user.setStatus(User.Status.ACTIVE);
+            user.setSalt("salt");
+            user.setPassword("password");
+            user.setRoles(i % 3 == 0 ? new ArrayList<>(List.of(scholar, god)) : new ArrayList<>(List.of(scholar)));
+
+            database.persist(user);
+        }
+
+        database.getTransaction().commit();
+        database.close();
+    }
+
+    // Roles are reference data, the datamodel offers no way to build them
+    private static Role newRole(Role.Name name) throws ReflectiveOperationException {
+        Constructor<Role> constructor = Role.class.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        Role role = constructor.newInstance();
+        TestFixtures.setField(role, "name", name);
+        return role;
+    }
+
+}
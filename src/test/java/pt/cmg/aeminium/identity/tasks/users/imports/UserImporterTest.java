@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2024 Carlos Gonçalves (https://www.linkedin.com/in/carlosmogoncalves/)
+ * Likely open-source, so copy at will, bugs will be yours as well.
+ */
+package pt.cmg.aeminium.identity.tasks.users.imports;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import jakarta.ejb.EJBException;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolationException;
+import pt.cmg.aeminium.datamodel.users.entities.identity.Role;
+import pt.cmg.aeminium.datamodel.users.entities.identity.User;
+import pt.cmg.aeminium.identity.TestFixtures;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.dto.request.CreateUserDTO;
+import pt.cmg.aeminium.identity.api.rest.v1.resources.users.validators.UserCreationValidator;
+import pt.cmg.aeminium.identity.tasks.users.PasswordHasher;
+import pt.cmg.aeminium.identity.tasks.users.PasswordHasher.HashedPassword;
+import pt.cmg.aeminium.identity.tasks.users.UserCreator;
+import pt.cmg.aeminium.identity.tasks.users.imports.UserImporter.UploadTooLargeException;
+
+/**
+ * How {@link UserImporter} takes uploads and stores a chunk: a full queue or an oversized upload is turned away without spooling it,
+ * rows that break a constraint are rejected on their own, any other failure fails the job,
+ * and the passwords are hashed once however many times the chunk is retried.
+ *
+ * @author Carlos Gonçalves
+ */
+class UserImporterTest {
+
+    private static final String TAKEN_EMAIL = "taken@aeminium.pt";
+
+    private UserCreator userCreator;
+    private PasswordHasher passwordHasher;
+
+    private UserImporter importer;
+
+    @BeforeEach
+    void setUp() {
+
+        userCreator = mock(UserCreator.class);
+
+        passwordHasher = mock(PasswordHasher.class);
+        when(passwordHasher.hashAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0, List.class).stream().map(password -> new HashedPassword("salt", "hash")).toList());
+
+        UserCreationValidator userCreationValidator = mock(UserCreationValidator.class);
+        when(userCreationValidator.isValidUsersForCreation(anyList())).thenReturn(Map.of());
+
+        importer = new UserImporter();
+        TestFixtures.setField(importer, "userCreator", userCreator);
+        TestFixtures.setField(importer, "passwordHasher", passwordHasher);
+        TestFixtures.setField(importer, "userCreationValidator", userCreationValidator);
+        TestFixtures.setField(importer, "maxRowErrors", 1000);
+        TestFixtures.setField(importer, "maxBytes", 1024L);
+        TestFixtures.setField(importer, "slots", new Semaphore(1));
+    }
+
+    @Test
+    void uploadsAreNotReadWhenTheQueueIsFull() {
+
+        TestFixtures.setField(importer, "slots", new Semaphore(0));
+        InputStream upload = mock(InputStream.class);
+
+        assertThrows(RejectedExecutionException.class, () -> importer.submit(upload, 10, UserImporter.Format.CSV));
+        verifyNoInteractions(upload);
+    }
+
+    @Test
+    void uploadsDeclaredTooLargeAreNotRead() {
+
+        InputStream upload = mock(InputStream.class);
+
+        assertThrows(UploadTooLargeException.class, () -> importer.submit(upload, 1025, UserImporter.Format.CSV));
+        verifyNoInteractions(upload);
+        assertEquals(1, ((Semaphore) TestFixtures.getField(importer, "slots")).availablePermits());
+    }
+
+    @Test
+    void uploadsGoingOverTheLimitAreStoppedAndGiveTheirSlotBack() {
+
+        // Chunked, so no length was declared
+        InputStream upload = new ByteArrayInputStream(new byte[2048]);
+
+        assertThrows(UploadTooLargeException.class, () -> importer.submit(upload, -1, UserImporter.Format.CSV));
+        assertEquals(1, ((Semaphore) TestFixtures.getField(importer, "slots")).availablePermits());
+    }
+
+    @Test
+    void onlyTheRowsBreakingAConstraintAreRejected() {
+
+        when(userCreator.createUsers(anyList(), anyList())).thenAnswer(invocation -> {
+            List<CreateUserDTO> users = invocation.getArgument(0);
+            if (users.stream().anyMatch(user -> TAKEN_EMAIL.equals(user.email))) {
+                throw new EJBException(new PersistenceException(new SQLException("duplicate key value violates unique constraint", "23505")));
+            }
+            return users.stream().map(user -> new User()).toList();
+        });
+
+        UserImportStatus status = importer.importChunk(running(), rows("a@aeminium.pt", "b@aeminium.pt", TAKEN_EMAIL, "c@aeminium.pt"));
+
+        assertEquals(4, status.rowsRead());
+        assertEquals(3, status.rowsCreated());
+        assertEquals(1, status.rowsRejected());
+        assertEquals(3, status.rowErrors().get(0).line());
+
+        // Once for the 4 rows, whatever the number of retries
+        verify(passwordHasher, times(1)).hashAll(anyList());
+    }
+
+    @Test
+    void anOutageFailsTheJobInsteadOfRejectingTheRows() {
+
+        when(userCreator.createUsers(anyList(), anyList())).thenThrow(new EJBException(new PersistenceException(new SQLException("Connection refused", "08001"))));
+
+        assertThrows(EJBException.class, () -> importer.importChunk(running(), rows("a@aeminium.pt", "b@aeminium.pt")));
+
+        // Not split and retried
+        verify(userCreator, times(1)).createUsers(anyList(), anyList());
+    }
+
+    @Test
+    void constraintViolationsAreFoundWhereverTheyAreWrapped() {
+
+        BatchUpdateException batchError = new BatchUpdateException("Batch entry 3 was aborted", "40000", new int[0]);
+        batchError.setNextException(new SQLException("duplicate key value violates unique constraint", "23505"));
+
+        assertTrue(UserImporter.isConstraintViolation(new EJBException(new PersistenceException(batchError))));
+        assertTrue(UserImporter.isConstraintViolation(new ConstraintViolationException(Set.of())));
+
+        assertFalse(UserImporter.isConstraintViolation(new EJBException(new PersistenceException(new SQLException("terminating connection", "57P01")))));
+        assertFalse(UserImporter.isConstraintViolation(new EJBException("Transaction manager unavailable")));
+        assertFalse(UserImporter.isConstraintViolation(new IllegalStateException(new SQLException("no state"))));
+    }
+
+    private static UserImportStatus running() {
+        return UserImportStatus.queued("job", "member", 0).started(0);
+    }
+
+    private static List<UserImportReader.Row> rows(String... emails) {
+
+        List<UserImportReader.Row> rows = new ArrayList<>(emails.length);
+
+        IntStream.range(0, emails.length).forEach(index -> {
+            CreateUserDTO user = new CreateUserDTO();
+            user.email = emails[index];
+            user.password = "password";
+            user.roles = List.of(Role.Name.SCHOLAR);
+            rows.add(new UserImportReader.Row(index + 1, user, null));
+        });
+
+        return rows;
+    }
+
+}